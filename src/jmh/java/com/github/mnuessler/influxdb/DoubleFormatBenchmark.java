@@ -0,0 +1,77 @@
+package com.github.mnuessler.influxdb;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link DoubleFormat} with the {@link NumberFormat} based formatting the encoder used before, which created a
+ * {@link NumberFormat} for each point.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DoubleFormatBenchmark {
+
+	private static final int VALUES = 1024;
+
+	private final double[] values = new double[VALUES];
+
+	private final LineProtocolBuffer buffer = new LineProtocolBuffer(64);
+
+	private final StringBuilder builder = new StringBuilder(64);
+
+	private int index;
+
+	@Setup
+	public void setUp() {
+		// a mix of typical metric values: rates, durations in milliseconds and large counts
+		Random random = new Random(42);
+		for (int i = 0; i < VALUES; i++) {
+			switch (i % 3) {
+			case 0:
+				values[i] = random.nextDouble();
+				break;
+			case 1:
+				values[i] = random.nextDouble() * 1000;
+				break;
+			default:
+				values[i] = Math.floor(random.nextDouble() * 1e9);
+				break;
+			}
+		}
+	}
+
+	@Benchmark
+	public LineProtocolBuffer doubleFormat() {
+		buffer.clear();
+		DoubleFormat.appendDouble(buffer, nextValue());
+		return buffer;
+	}
+
+	@Benchmark
+	public StringBuilder numberFormatBaseline() {
+		builder.setLength(0);
+		builder.append(NumberFormat.getInstance(Locale.ENGLISH).format(nextValue()));
+		return builder;
+	}
+
+	private double nextValue() {
+		return values[index++ & (VALUES - 1)];
+	}
+}
@@ -0,0 +1,85 @@
+package com.github.mnuessler.influxdb;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+
+/**
+ * Writes a payload to a local WireMock stub, which mostly measures the per-request overhead of the client, as the stub does not
+ * parse the payload.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InfluxDbHcClientBenchmark {
+
+	@Param({ "10", "1000" })
+	public int points;
+
+	@Param({ "false", "true" })
+	public boolean gzip;
+
+	private WireMockServer server;
+
+	private InfluxDbHcClient client;
+
+	private LineProtocolBuffer payload;
+
+	@Setup
+	public void setUp() {
+		server = new WireMockServer(wireMockConfig().dynamicPort());
+		server.start();
+		server.stubFor(post(urlPathEqualTo("/write")).willReturn(aResponse().withStatus(204)));
+
+		InfluxDbHcClient.Builder builder = InfluxDbHcClient.forUrl("http://localhost:" + server.port());
+		if (gzip) {
+			builder.withGzip();
+		}
+		client = builder.build();
+
+		LineProtocolEncoder encoder = new LineProtocolEncoder();
+		payload = new LineProtocolBuffer(points * 128);
+		long timestamp = System.currentTimeMillis();
+		for (int i = 0; i < points; i++) {
+			encoder.beginPoint(payload, "com.example.service.timer" + i, Collections.singletonMap("host", "web01"))
+					.field("count", 1234L * i)
+					.field("mean", 12.345 * i)
+					.field("99-percentile", 98.76 * i)
+					.end(timestamp);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		client.close();
+		server.stop();
+	}
+
+	@Benchmark
+	public void write() throws IOException {
+		client.write(payload, "db", null);
+	}
+}
@@ -0,0 +1,100 @@
+package com.github.mnuessler.influxdb;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes a single point into a reused buffer, with and without the series key cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LineProtocolEncoderBenchmark {
+
+	@Param({ "double", "long", "string", "mixed" })
+	public String fieldType;
+
+	@Param({ "plain", "escaped" })
+	public String names;
+
+	@Param({ "true", "false" })
+	public boolean seriesKeyCache;
+
+	private LineProtocolEncoder encoder;
+
+	private LineProtocolBuffer buffer;
+
+	private String measurement;
+
+	private Map<String, String> tags;
+
+	private Map<String, Object> fields;
+
+	private long timestamp;
+
+	@Setup
+	public void setUp() {
+		encoder = new LineProtocolEncoder(seriesKeyCache ? new SeriesKeyCache(1000) : null);
+		buffer = new LineProtocolBuffer(4096);
+		timestamp = System.currentTimeMillis();
+
+		boolean escaped = "escaped".equals(names);
+		measurement = escaped ? "com.example,service Request Timer" : "com.example.service.RequestTimer";
+		tags = new TreeMap<>();
+		tags.put(escaped ? "host name" : "host", escaped ? "web=01,eu west" : "web01");
+		tags.put("region", escaped ? "eu west 1" : "eu-west-1");
+
+		fields = new LinkedHashMap<>();
+		String prefix = escaped ? "field=" : "field-";
+		switch (fieldType) {
+		case "double":
+			for (int i = 0; i < 10; i++) {
+				fields.put(prefix + i, 0.1 * i + 1234.5678);
+			}
+			break;
+		case "long":
+			for (int i = 0; i < 10; i++) {
+				fields.put(prefix + i, 1234567L * i);
+			}
+			break;
+		case "string":
+			for (int i = 0; i < 10; i++) {
+				fields.put(prefix + i, escaped ? "say \"hello\" " + i : "hello " + i);
+			}
+			break;
+		default:
+			fields.put(prefix + "count", 12345L);
+			fields.put(prefix + "mean", 12.3456789);
+			fields.put(prefix + "rate", 0.0012f);
+			fields.put(prefix + "enabled", true);
+			fields.put(prefix + "state", "running");
+			break;
+		}
+		fields = Collections.unmodifiableMap(fields);
+	}
+
+	@Benchmark
+	public LineProtocolBuffer encodeInto() {
+		buffer.clear();
+		encoder.encodeInto(buffer, measurement, fields, tags, timestamp);
+		return buffer;
+	}
+}
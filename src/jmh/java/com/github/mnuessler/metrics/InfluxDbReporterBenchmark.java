@@ -0,0 +1,95 @@
+package com.github.mnuessler.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.mnuessler.influxdb.InfluxDbClient;
+import com.github.mnuessler.influxdb.LineProtocolBuffer;
+
+/**
+ * Runs full report cycles over a registry with equal numbers of gauges, counters, histograms, meters and timers. The payload is handed
+ * to a client that discards it, so the benchmark covers collecting and encoding only.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InfluxDbReporterBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int metrics;
+
+	@Param({ "1", "4" })
+	public int parallelism;
+
+	private InfluxDbReporter reporter;
+
+	@Setup
+	public void setUp(final Blackhole blackhole) {
+		MetricRegistry registry = new MetricRegistry();
+		for (int i = 0; i < metrics / 5; i++) {
+			final long value = i;
+			registry.register("gauge." + i, new Gauge<Long>() {
+				@Override
+				public Long getValue() {
+					return value;
+				}
+			});
+			registry.counter("counter." + i).inc(i);
+			Histogram histogram = registry.histogram("histogram." + i);
+			Timer timer = registry.timer("timer." + i);
+			for (int j = 0; j < 100; j++) {
+				histogram.update(i + j);
+				timer.update(i + j, TimeUnit.MICROSECONDS);
+			}
+			registry.meter("meter." + i).mark(i);
+		}
+
+		reporter = InfluxDbReporter.forRegistry(registry)
+				.withInfluxDbClient(new InfluxDbClient() {
+					@Override
+					public void write(CharSequence payload, String database, String retentionPolicy) throws IOException {
+						blackhole.consume(payload);
+					}
+
+					@Override
+					public void write(LineProtocolBuffer payload, String database, String retentionPolicy) throws IOException {
+						blackhole.consume(payload.length());
+					}
+				})
+				.withDatabase("db")
+				.withTag("host", "web01")
+				.withParallelism(parallelism)
+				.build();
+	}
+
+	@TearDown
+	public void tearDown() {
+		reporter.stop();
+	}
+
+	@Benchmark
+	public void report() {
+		reporter.report();
+	}
+}
@@ -0,0 +1,281 @@
+package com.github.mnuessler.influxdb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decorator handing payloads to a bounded queue that is drained by background sender threads, so that callers never wait for the
+ * InfluxDB server. Payloads are copied into one array each when they are enqueued, as the caller reuses its buffer as soon as the write
+ * returns; the queue therefore holds up to the configured number of bytes besides the caller's buffers. When the queue is full, by
+ * number of batches or bytes, a batch is dropped according to the configured {@link DropPolicy}.
+ */
+public class AsyncInfluxDbClient implements FlushableInfluxDbClient, Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncInfluxDbClient.class);
+
+	public enum DropPolicy {
+		/** Discard the oldest queued batch to make room for the new one. */
+		DROP_OLDEST,
+		/** Discard the batch that could not be queued. */
+		DROP_NEWEST
+	}
+
+	public static Builder wrap(@Nonnull final InfluxDbClient delegate) {
+		return new Builder(delegate);
+	}
+
+	public static class Builder {
+		private final InfluxDbClient delegate;
+
+		private int queueCapacity = 10;
+
+		private long maxQueuedBytes = 64L * 1024 * 1024;
+
+		private int senderThreads = 1;
+
+		private DropPolicy dropPolicy = DropPolicy.DROP_OLDEST;
+
+		private Builder(@Nonnull InfluxDbClient delegate) {
+			this.delegate = delegate;
+		}
+
+		public Builder withQueueCapacity(int queueCapacity) {
+			if (queueCapacity < 1) {
+				throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+			}
+			this.queueCapacity = queueCapacity;
+			return this;
+		}
+
+		/**
+		 * Maximum total size of the queued payloads, defaults to 64 MiB. A single larger payload is queued if the queue is empty.
+		 */
+		public Builder withMaxQueuedBytes(long maxQueuedBytes) {
+			if (maxQueuedBytes < 1) {
+				throw new IllegalArgumentException("Maximum number of queued bytes must be positive: " + maxQueuedBytes);
+			}
+			this.maxQueuedBytes = maxQueuedBytes;
+			return this;
+		}
+
+		public Builder withSenderThreads(int senderThreads) {
+			if (senderThreads < 1) {
+				throw new IllegalArgumentException("Number of sender threads must be positive: " + senderThreads);
+			}
+			this.senderThreads = senderThreads;
+			return this;
+		}
+
+		public Builder withDropPolicy(@Nonnull DropPolicy dropPolicy) {
+			this.dropPolicy = dropPolicy;
+			return this;
+		}
+
+		public AsyncInfluxDbClient build() {
+			return new AsyncInfluxDbClient(delegate, queueCapacity, maxQueuedBytes, senderThreads, dropPolicy);
+		}
+	}
+
+	private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+
+	private final InfluxDbClient delegate;
+
+	private final BlockingQueue<Batch> queue;
+
+	private final long maxQueuedBytes;
+
+	private final AtomicLong queuedBytes = new AtomicLong();
+
+	private final DropPolicy dropPolicy;
+
+	private final List<Thread> senders;
+
+	private final Object pendingLock = new Object();
+
+	private int pending;
+
+	private final AtomicLong droppedBatches = new AtomicLong();
+
+	private volatile boolean closed;
+
+	private AsyncInfluxDbClient(InfluxDbClient delegate, int queueCapacity, long maxQueuedBytes, int senderThreads,
+			DropPolicy dropPolicy) {
+		this.delegate = delegate;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.dropPolicy = dropPolicy;
+		this.senders = new ArrayList<>(senderThreads);
+		int instance = INSTANCE_COUNTER.incrementAndGet();
+		for (int i = 0; i < senderThreads; i++) {
+			Thread sender = new Thread(new Sender(), "influxdb-sender-" + instance + "-" + (i + 1));
+			sender.setDaemon(true);
+			senders.add(sender);
+			sender.start();
+		}
+	}
+
+	@Override
+	public void write(@Nonnull CharSequence payload, @Nonnull String database, @Nullable String retentionPolicy) throws IOException {
+		enqueue(new Batch(payload.toString().getBytes(CHARSET), database, retentionPolicy));
+	}
+
+	@Override
+	public void write(@Nonnull LineProtocolBuffer payload, @Nonnull String database, @Nullable String retentionPolicy)
+			throws IOException {
+		enqueue(new Batch(payload.toByteArray(), database, retentionPolicy));
+	}
+
+	/**
+	 * Queues an encoded payload without copying it, the array must not be modified afterwards.
+	 */
+	void write(@Nonnull byte[] payload, @Nonnull String database, @Nullable String retentionPolicy) throws IOException {
+		enqueue(new Batch(payload, database, retentionPolicy));
+	}
+
+	@Override
+	public boolean flush(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (pendingLock) {
+			while (pending > 0) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(pendingLock, remaining);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the sender threads. Batches that are still queued are discarded, call {@link #flush(long, TimeUnit)} first to send them.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (Thread sender : senders) {
+			sender.interrupt();
+		}
+		discardQueued();
+	}
+
+	@Override
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	@Override
+	public long getDroppedBatches() {
+		return droppedBatches.get();
+	}
+
+	private void enqueue(Batch batch) throws IOException {
+		if (closed) {
+			throw new IOException("Client has been closed");
+		}
+		addPending(1);
+		while (!offer(batch)) {
+			Batch dropped = dropPolicy == DropPolicy.DROP_OLDEST ? poll() : batch;
+			if (dropped != null) {
+				droppedBatches.incrementAndGet();
+				addPending(-1);
+				LOG.warn("Write queue is full, dropped a batch of {} bytes for database '{}'", dropped.payload.length, dropped.database);
+				if (dropped == batch) {
+					return;
+				}
+			}
+		}
+		if (closed) {
+			// closed concurrently, after the queue was drained
+			discardQueued();
+		}
+	}
+
+	private boolean offer(Batch batch) {
+		long bytes = queuedBytes.addAndGet(batch.payload.length);
+		if ((bytes > maxQueuedBytes && bytes > batch.payload.length) || !queue.offer(batch)) {
+			queuedBytes.addAndGet(-batch.payload.length);
+			return false;
+		}
+		return true;
+	}
+
+	@Nullable
+	private Batch poll() {
+		Batch batch = queue.poll();
+		if (batch != null) {
+			queuedBytes.addAndGet(-batch.payload.length);
+		}
+		return batch;
+	}
+
+	private void discardQueued() {
+		List<Batch> discarded = new ArrayList<>();
+		queue.drainTo(discarded);
+		for (Batch batch : discarded) {
+			queuedBytes.addAndGet(-batch.payload.length);
+		}
+		if (!discarded.isEmpty()) {
+			LOG.info("Client closed, discarded {} queued batches", discarded.size());
+			// a flush waiting for the discarded batches must not wait for its timeout
+			addPending(-discarded.size());
+		}
+	}
+
+	private void addPending(int delta) {
+		synchronized (pendingLock) {
+			pending += delta;
+			if (pending == 0) {
+				pendingLock.notifyAll();
+			}
+		}
+	}
+
+	private class Sender implements Runnable {
+		@Override
+		public void run() {
+			while (!closed) {
+				Batch batch;
+				try {
+					batch = queue.take();
+					queuedBytes.addAndGet(-batch.payload.length);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				try {
+					delegate.write(LineProtocolBuffer.wrap(batch.payload), batch.database, batch.retentionPolicy);
+				} catch (Exception e) {
+					LOG.info("Failed to send metrics to InfluxDB", e);
+				} finally {
+					addPending(-1);
+				}
+			}
+		}
+	}
+
+	private static final class Batch {
+		private final byte[] payload;
+		private final String database;
+		private final String retentionPolicy;
+
+		private Batch(byte[] payload, String database, String retentionPolicy) {
+			this.payload = payload;
+			this.database = database;
+			this.retentionPolicy = retentionPolicy;
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package com.github.mnuessler.influxdb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decorator cutting large payloads at line boundaries into batches of limited size, as InfluxDB recommends 5,000 to 10,000 points per
+ * request. Batches share the content of the payload instead of copying it, and are sent independently, optionally several at a time,
+ * so a batch rejected by the server does not prevent the others from being written.
+ */
+public class BatchingInfluxDbClient implements InfluxDbClient, Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BatchingInfluxDbClient.class);
+
+	private static final byte LINE_SEPARATOR = '\n';
+
+	public static Builder wrap(@Nonnull final InfluxDbClient delegate) {
+		return new Builder(delegate);
+	}
+
+	public static class Builder {
+		private final InfluxDbClient delegate;
+
+		private int maxPointsPerBatch = 5000;
+
+		private int maxBytesPerBatch = 1024 * 1024;
+
+		private int concurrency = 1;
+
+		private Builder(@Nonnull InfluxDbClient delegate) {
+			this.delegate = delegate;
+		}
+
+		public Builder withMaxPointsPerBatch(int maxPointsPerBatch) {
+			if (maxPointsPerBatch < 1) {
+				throw new IllegalArgumentException("Maximum number of points must be positive: " + maxPointsPerBatch);
+			}
+			this.maxPointsPerBatch = maxPointsPerBatch;
+			return this;
+		}
+
+		/**
+		 * Maximum payload size of a batch. A single line exceeding the limit is sent as a batch of its own.
+		 */
+		public Builder withMaxBytesPerBatch(int maxBytesPerBatch) {
+			if (maxBytesPerBatch < 1) {
+				throw new IllegalArgumentException("Maximum number of bytes must be positive: " + maxBytesPerBatch);
+			}
+			this.maxBytesPerBatch = maxBytesPerBatch;
+			return this;
+		}
+
+		/**
+		 * Number of batches of a payload sent at the same time. The wrapped client has to allow as many concurrent connections.
+		 */
+		public Builder withConcurrency(int concurrency) {
+			if (concurrency < 1) {
+				throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+			}
+			this.concurrency = concurrency;
+			return this;
+		}
+
+		public BatchingInfluxDbClient build() {
+			return new BatchingInfluxDbClient(delegate, maxPointsPerBatch, maxBytesPerBatch, concurrency);
+		}
+	}
+
+	private final InfluxDbClient delegate;
+
+	private final int maxPointsPerBatch;
+
+	private final int maxBytesPerBatch;
+
+	private final ExecutorService executor;
+
+	private BatchingInfluxDbClient(InfluxDbClient delegate, int maxPointsPerBatch, int maxBytesPerBatch, int concurrency) {
+		this.delegate = delegate;
+		this.maxPointsPerBatch = maxPointsPerBatch;
+		this.maxBytesPerBatch = maxBytesPerBatch;
+		this.executor = concurrency > 1 ? Executors.newFixedThreadPool(concurrency, new BatchThreadFactory()) : null;
+	}
+
+	@Override
+	public void write(@Nonnull CharSequence payload, @Nonnull String database, @Nullable String retentionPolicy) throws IOException {
+		write(LineProtocolBuffer.wrap(payload.toString().getBytes(CHARSET)), database, retentionPolicy);
+	}
+
+	/**
+	 * Sends the payload in batches. If any batch fails, the remaining batches are still sent and a {@link PartialWriteException}
+	 * describing all failures is thrown afterwards.
+	 */
+	@Override
+	public void write(@Nonnull LineProtocolBuffer payload, @Nonnull String database, @Nullable String retentionPolicy)
+			throws IOException {
+		if (payload.length() <= maxBytesPerBatch && countLines(payload) <= maxPointsPerBatch) {
+			delegate.write(payload, database, retentionPolicy);
+			return;
+		}
+
+		List<LineProtocolBuffer> batches = split(payload);
+		List<LineProtocolBuffer> failedBatches = new ArrayList<>();
+		List<Exception> failures = executor == null
+				? sendSequentially(batches, database, retentionPolicy, failedBatches)
+				: sendConcurrently(batches, database, retentionPolicy, failedBatches);
+		if (!failures.isEmpty()) {
+			throw new PartialWriteException(failedBatches, failures, batches.size());
+		}
+	}
+
+	@Override
+	public void close() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	private List<LineProtocolBuffer> split(LineProtocolBuffer payload) {
+		List<LineProtocolBuffer> batches = new ArrayList<>();
+		int length = payload.length();
+		int batchStart = 0;
+		int lineStart = 0;
+		int points = 0;
+		while (lineStart < length) {
+			int lineEnd = payload.indexOf(LINE_SEPARATOR, lineStart);
+			int next = lineEnd < 0 ? length : lineEnd + 1;
+			if (points > 0 && (points == maxPointsPerBatch || next - batchStart > maxBytesPerBatch)) {
+				batches.add(payload.slice(batchStart, lineStart - batchStart));
+				batchStart = lineStart;
+				points = 0;
+			}
+			points++;
+			lineStart = next;
+		}
+		if (batchStart < length) {
+			batches.add(payload.slice(batchStart, length - batchStart));
+		}
+		return batches;
+	}
+
+	private int countLines(LineProtocolBuffer payload) {
+		int lines = 0;
+		int lineEnd = payload.indexOf(LINE_SEPARATOR, 0);
+		while (lineEnd >= 0 && lines <= maxPointsPerBatch) {
+			lines++;
+			lineEnd = payload.indexOf(LINE_SEPARATOR, lineEnd + 1);
+		}
+		return lines;
+	}
+
+	private List<Exception> sendSequentially(List<LineProtocolBuffer> batches, String database, String retentionPolicy,
+			List<LineProtocolBuffer> failedBatches) {
+		List<Exception> failures = new ArrayList<>();
+		for (LineProtocolBuffer batch : batches) {
+			try {
+				delegate.write(batch, database, retentionPolicy);
+			} catch (Exception e) {
+				LOG.debug("Failed to write batch of {} bytes", batch.length(), e);
+				failures.add(e);
+				failedBatches.add(batch);
+			}
+		}
+		return failures;
+	}
+
+	private List<Exception> sendConcurrently(List<LineProtocolBuffer> batches, final String database, final String retentionPolicy,
+			List<LineProtocolBuffer> failedBatches) throws IOException {
+		final AtomicBoolean abandoned = new AtomicBoolean();
+		List<Future<Void>> futures = new ArrayList<>(batches.size());
+		for (final LineProtocolBuffer batch : batches) {
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					if (abandoned.get()) {
+						return null;
+					}
+					delegate.write(batch, database, retentionPolicy);
+					return null;
+				}
+			}));
+		}
+
+		List<Exception> failures = new ArrayList<>();
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				futures.get(i).get();
+			} catch (ExecutionException e) {
+				LOG.debug("Failed to write batch", e.getCause());
+				failures.add(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+				failedBatches.add(batches.get(i));
+			} catch (InterruptedException e) {
+				// batches that have not been started yet are not sent anymore, but the running ones read the payload, which belongs to the
+				// caller again as soon as this method returns
+				abandoned.set(true);
+				awaitUninterruptibly(futures);
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while writing batches", e);
+			}
+		}
+		return failures;
+	}
+
+	private static void awaitUninterruptibly(List<Future<Void>> futures) {
+		for (Future<Void> future : futures) {
+			boolean done = false;
+			while (!done) {
+				try {
+					future.get();
+					done = true;
+				} catch (ExecutionException e) {
+					done = true;
+				} catch (InterruptedException e) {
+					// interrupted again, the interrupt is restored by the caller
+				}
+			}
+		}
+	}
+
+	/**
+	 * Thrown if some batches of a payload could not be written, with the failure of the first failed batch as cause and the failures of
+	 * the others as suppressed exceptions. The other batches have been written.
+	 */
+	public static final class PartialWriteException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		private final transient List<LineProtocolBuffer> failedBatches;
+
+		private final transient List<Exception> failures;
+
+		private final int batches;
+
+		PartialWriteException(List<LineProtocolBuffer> failedBatches, List<Exception> failures, int batches) {
+			super(failures.size() + " of " + batches + " batches could not be written", failures.get(0));
+			this.failedBatches = failedBatches;
+			this.failures = failures;
+			this.batches = batches;
+			for (int i = 1; i < failures.size(); i++) {
+				addSuppressed(failures.get(i));
+			}
+		}
+
+		/**
+		 * Failures of the failed batches, in the order of the batches.
+		 */
+		public List<Exception> getFailures() {
+			return failures;
+		}
+
+		public int getBatches() {
+			return batches;
+		}
+
+		/**
+		 * Failed batches, in the order of {@link #getFailures()}. They share the content of the payload passed to
+		 * {@link BatchingInfluxDbClient#write(LineProtocolBuffer, String, String)} and are only valid until the caller modifies it.
+		 */
+		List<LineProtocolBuffer> getFailedBatches() {
+			return failedBatches;
+		}
+	}
+
+	private static class BatchThreadFactory implements ThreadFactory {
+		private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+
+		private final int instance = INSTANCE_COUNTER.incrementAndGet();
+
+		private final AtomicInteger threadCounter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "influxdb-batch-" + instance + "-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
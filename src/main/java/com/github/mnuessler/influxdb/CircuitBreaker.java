@@ -0,0 +1,89 @@
+package com.github.mnuessler.influxdb;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Stops requests to the server after a number of consecutive failures. Once the open duration has passed, a single trial request is let
+ * through: if it succeeds the breaker closes again, otherwise it stays open for another period.
+ */
+public final class CircuitBreaker {
+
+	public enum State {
+		/** Requests are sent. */
+		CLOSED,
+		/** Requests are rejected without contacting the server. */
+		OPEN,
+		/** A single trial request is on its way. */
+		HALF_OPEN
+	}
+
+	private final int failureThreshold;
+
+	private final long openNanos;
+
+	private State state = State.CLOSED;
+
+	private int consecutiveFailures;
+
+	private long openedAt;
+
+	private long timesOpened;
+
+	public CircuitBreaker(int failureThreshold, long openDuration, @Nonnull TimeUnit unit) {
+		if (failureThreshold < 1) {
+			throw new IllegalArgumentException("Failure threshold must be positive: " + failureThreshold);
+		}
+		this.failureThreshold = failureThreshold;
+		this.openNanos = unit.toNanos(openDuration);
+	}
+
+	/**
+	 * Returns whether a request may be sent. Moves an open breaker to half-open once the open duration has passed.
+	 */
+	public synchronized boolean allowRequest() {
+		switch (state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (System.nanoTime() - openedAt >= openNanos) {
+				state = State.HALF_OPEN;
+				return true;
+			}
+			return false;
+		default:
+			// only the trial request is allowed
+			return false;
+		}
+	}
+
+	public synchronized void recordSuccess() {
+		consecutiveFailures = 0;
+		state = State.CLOSED;
+	}
+
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+			state = State.OPEN;
+			openedAt = System.nanoTime();
+			timesOpened++;
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * Number of times the breaker has been opened since it was created.
+	 */
+	public synchronized long getTimesOpened() {
+		return timesOpened;
+	}
+}
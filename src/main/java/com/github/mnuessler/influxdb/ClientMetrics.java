@@ -0,0 +1,67 @@
+package com.github.mnuessler.influxdb;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Metrics describing the requests of an {@link InfluxDbHcClient}.
+ */
+final class ClientMetrics {
+
+	private final MetricRegistry registry;
+
+	private final String prefix;
+
+	final Timer requestTime;
+
+	final Histogram requestSize;
+
+	final Counter ioErrors;
+
+	final Counter retries;
+
+	final Counter failedWrites;
+
+	// counters by HTTP status code, created on first use
+	private final AtomicReferenceArray<Counter> responses = new AtomicReferenceArray<>(600);
+
+	ClientMetrics(@Nonnull MetricRegistry registry, @Nonnull String prefix, final CircuitBreaker circuitBreaker) {
+		this.registry = registry;
+		this.prefix = prefix;
+		this.requestTime = registry.timer(MetricRegistry.name(prefix, "requests"));
+		this.requestSize = registry.histogram(MetricRegistry.name(prefix, "request-size"));
+		this.ioErrors = registry.counter(MetricRegistry.name(prefix, "io-errors"));
+		this.retries = registry.counter(MetricRegistry.name(prefix, "retries"));
+		this.failedWrites = registry.counter(MetricRegistry.name(prefix, "failed-writes"));
+		if (circuitBreaker != null) {
+			String name = MetricRegistry.name(prefix, "circuit-breaker", "open");
+			// replaces the gauge of a previous client with the same prefix
+			registry.remove(name);
+			registry.register(name, new Gauge<Integer>() {
+				@Override
+				public Integer getValue() {
+					return circuitBreaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1;
+				}
+			});
+		}
+	}
+
+	void response(int statusCode) {
+		if (statusCode < 0 || statusCode >= responses.length()) {
+			return;
+		}
+		Counter counter = responses.get(statusCode);
+		if (counter == null) {
+			counter = registry.counter(MetricRegistry.name(prefix, "responses", Integer.toString(statusCode)));
+			responses.set(statusCode, counter);
+		}
+		counter.inc();
+	}
+}
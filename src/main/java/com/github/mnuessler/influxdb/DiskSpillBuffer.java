@@ -0,0 +1,251 @@
+package com.github.mnuessler.influxdb;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * FIFO of payloads stored in memory-mapped segment files. Each record is laid out as
+ * {@code length | database length | database | retention policy length | retention policy | payload}; the length is written last, so a
+ * record interrupted by a crash reads as the end of the segment, and its sign bit is set once the record has been replayed. Segments are
+ * deleted when all their records have been replayed, and the oldest segments are dropped when the disk usage limit would be exceeded.
+ * Instances are not thread-safe.
+ */
+final class DiskSpillBuffer {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DiskSpillBuffer.class);
+
+	private static final String SEGMENT_SUFFIX = ".spill";
+
+	private static final int CONSUMED = 0x80000000;
+
+	private final Path directory;
+
+	private final int segmentSize;
+
+	private final long maxDiskUsage;
+
+	private final Deque<Segment> segments = new ArrayDeque<>();
+
+	private long diskUsage;
+
+	private long nextSequence;
+
+	DiskSpillBuffer(@Nonnull final Path directory, final int segmentSize, final long maxDiskUsage) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxDiskUsage = maxDiskUsage;
+		Files.createDirectories(directory);
+		recover();
+	}
+
+	boolean isEmpty() {
+		return peekSegment() == null;
+	}
+
+	long diskUsage() {
+		return diskUsage;
+	}
+
+	void append(@Nonnull final byte[] payload, @Nonnull final String database, @Nullable final String retentionPolicy) throws IOException {
+		byte[] databaseBytes = database.getBytes(InfluxDbClient.CHARSET);
+		byte[] retentionPolicyBytes = retentionPolicy != null ? retentionPolicy.getBytes(InfluxDbClient.CHARSET) : null;
+		int recordLength = 4 + databaseBytes.length + 4 + (retentionPolicyBytes != null ? retentionPolicyBytes.length : 0) + payload.length;
+
+		Segment segment = segments.peekLast();
+		if (segment == null || segment.buffer.capacity() - segment.writePosition < 4 + recordLength) {
+			segment = createSegment(Math.max(segmentSize, 4 + recordLength));
+		}
+
+		MappedByteBuffer buffer = segment.buffer;
+		int position = segment.writePosition;
+		((Buffer) buffer).position(position + 4);
+		buffer.putInt(databaseBytes.length).put(databaseBytes);
+		if (retentionPolicyBytes != null) {
+			buffer.putInt(retentionPolicyBytes.length).put(retentionPolicyBytes);
+		} else {
+			buffer.putInt(-1);
+		}
+		buffer.put(payload);
+		buffer.putInt(position, recordLength);
+		segment.writePosition = position + 4 + recordLength;
+	}
+
+	/**
+	 * Returns the oldest record that has not been removed yet, or {@code null}.
+	 */
+	@Nullable
+	Record peek() {
+		Segment segment = peekSegment();
+		if (segment == null) {
+			return null;
+		}
+		MappedByteBuffer buffer = segment.buffer;
+		int recordLength = buffer.getInt(segment.readPosition);
+		((Buffer) buffer).position(segment.readPosition + 4);
+		String database = readString(buffer, buffer.getInt());
+		int retentionPolicyLength = buffer.getInt();
+		String retentionPolicy = retentionPolicyLength >= 0 ? readString(buffer, retentionPolicyLength) : null;
+		byte[] payload = new byte[segment.readPosition + 4 + recordLength - buffer.position()];
+		buffer.get(payload);
+		return new Record(segment, segment.readPosition, payload, database, retentionPolicy);
+	}
+
+	/**
+	 * Marks the oldest record as replayed.
+	 */
+	void remove() throws IOException {
+		Segment segment = peekSegment();
+		if (segment == null) {
+			return;
+		}
+		int recordLength = segment.buffer.getInt(segment.readPosition);
+		segment.buffer.putInt(segment.readPosition, recordLength | CONSUMED);
+		segment.readPosition += 4 + recordLength;
+		deleteDrainedSegments();
+	}
+
+	/**
+	 * Marks the given record as replayed, unless it has been dropped along with its segment in the meantime.
+	 */
+	void remove(@Nonnull final Record record) throws IOException {
+		Segment segment = peekSegment();
+		if (segment == record.segment && segment.readPosition == record.position) {
+			remove();
+		}
+	}
+
+	private Segment peekSegment() {
+		for (Segment segment : segments) {
+			if (segment.readPosition < segment.writePosition) {
+				return segment;
+			}
+		}
+		return null;
+	}
+
+	private void recover() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		// zero padded sequence numbers, so lexical order is the order of creation
+		Collections.sort(files);
+
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			long sequence;
+			try {
+				sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				LOG.warn("Ignoring unexpected file {} in spill directory", file);
+				continue;
+			}
+			Segment segment = mapSegment(file, (int) Files.size(file));
+			int position = 0;
+			while (position + 4 <= segment.buffer.capacity()) {
+				int length = segment.buffer.getInt(position);
+				if (length == 0 || position + 4 + (length & ~CONSUMED) > segment.buffer.capacity()) {
+					break;
+				}
+				if (length < 0 && segment.readPosition == position) {
+					segment.readPosition = position + 4 + (length & ~CONSUMED);
+				}
+				position += 4 + (length & ~CONSUMED);
+			}
+			segment.writePosition = position;
+			segments.addLast(segment);
+			diskUsage += segment.buffer.capacity();
+			nextSequence = sequence + 1;
+		}
+		deleteDrainedSegments();
+		if (!segments.isEmpty()) {
+			LOG.info("Recovered {} spilled payload segments from {}", segments.size(), directory);
+		}
+	}
+
+	private Segment createSegment(int size) throws IOException {
+		while (!segments.isEmpty() && diskUsage + size > maxDiskUsage) {
+			Segment oldest = segments.removeFirst();
+			LOG.warn("Spill directory {} exceeds {} bytes, dropping segment {}", directory, maxDiskUsage, oldest.file.getFileName());
+			delete(oldest);
+		}
+		Path file = directory.resolve(String.format("%020d%s", nextSequence, SEGMENT_SUFFIX));
+		Segment segment = mapSegment(file, size);
+		nextSequence++;
+		segments.addLast(segment);
+		diskUsage += size;
+		return segment;
+	}
+
+	private void deleteDrainedSegments() throws IOException {
+		// the newest segment is kept for appending
+		while (segments.size() > 1 && segments.peekFirst().readPosition >= segments.peekFirst().writePosition) {
+			delete(segments.removeFirst());
+		}
+	}
+
+	private void delete(Segment segment) throws IOException {
+		diskUsage -= segment.buffer.capacity();
+		// the mapping itself is released when the buffer is garbage collected
+		Files.deleteIfExists(segment.file);
+	}
+
+	private static Segment mapSegment(Path file, int size) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+		}
+	}
+
+	private static String readString(MappedByteBuffer buffer, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, InfluxDbClient.CHARSET);
+	}
+
+	static final class Record {
+		private final Segment segment;
+		private final int position;
+		final byte[] payload;
+		final String database;
+		final String retentionPolicy;
+
+		private Record(Segment segment, int position, byte[] payload, String database, String retentionPolicy) {
+			this.segment = segment;
+			this.position = position;
+			this.payload = payload;
+			this.database = database;
+			this.retentionPolicy = retentionPolicy;
+		}
+	}
+
+	private static final class Segment {
+		private final Path file;
+		private final MappedByteBuffer buffer;
+		private int readPosition;
+		private int writePosition;
+
+		private Segment(Path file, MappedByteBuffer buffer) {
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+}
@@ -0,0 +1,336 @@
+package com.github.mnuessler.influxdb;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Formats floating point numbers with the shortest decimal representation that parses back to the same value, using the Ryu algorithm
+ * (Ulf Adams, "Ryū: fast float-to-string conversion", PLDI 2018). Digits are appended directly to the output buffer without intermediate
+ * strings. Numbers are written like JavaScript's {@code Number.prototype.toString()}, i.e. in plain notation unless the decimal exponent
+ * is below -6 or above 20, and without a trailing {@code .0} for integral values, which InfluxDB still reads as float.
+ */
+final class DoubleFormat {
+
+	private static final int DOUBLE_MANTISSA_BITS = 52;
+	private static final int DOUBLE_EXPONENT_BITS = 11;
+	private static final int DOUBLE_BIAS = 1023;
+
+	private static final int FLOAT_MANTISSA_BITS = 23;
+	private static final int FLOAT_EXPONENT_BITS = 8;
+	private static final int FLOAT_BIAS = 127;
+
+	private static final int POW5_BITCOUNT = 125;
+	private static final int POW5_INV_BITCOUNT = 125;
+	private static final int POW5_TABLE_SIZE = 326;
+	private static final int POW5_INV_TABLE_SIZE = 342;
+
+	// 125 bit approximations of 5^i and 2^k / 5^i, split into the low and high 64 bits
+	private static final long[] POW5_LOW = new long[POW5_TABLE_SIZE];
+	private static final long[] POW5_HIGH = new long[POW5_TABLE_SIZE];
+	private static final long[] POW5_INV_LOW = new long[POW5_INV_TABLE_SIZE];
+	private static final long[] POW5_INV_HIGH = new long[POW5_INV_TABLE_SIZE];
+
+	private static final long[] POW10 = new long[19];
+
+	private static final int MAX_PLAIN_EXPONENT = 21;
+	private static final int MIN_PLAIN_EXPONENT = -6;
+
+	static {
+		BigInteger five = BigInteger.valueOf(5);
+		BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		for (int i = 0; i < Math.max(POW5_TABLE_SIZE, POW5_INV_TABLE_SIZE); i++) {
+			BigInteger pow = five.pow(i);
+			int pow5len = pow.bitLength();
+			if (i < POW5_TABLE_SIZE) {
+				int shift = pow5len - POW5_BITCOUNT;
+				BigInteger pow5 = shift >= 0 ? pow.shiftRight(shift) : pow.shiftLeft(-shift);
+				POW5_LOW[i] = pow5.and(mask).longValue();
+				POW5_HIGH[i] = pow5.shiftRight(64).longValue();
+			}
+			if (i < POW5_INV_TABLE_SIZE) {
+				BigInteger inv = BigInteger.ONE.shiftLeft(pow5len - 1 + POW5_INV_BITCOUNT).divide(pow).add(BigInteger.ONE);
+				POW5_INV_LOW[i] = inv.and(mask).longValue();
+				POW5_INV_HIGH[i] = inv.shiftRight(64).longValue();
+			}
+		}
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i - 1] * 10;
+		}
+	}
+
+	private DoubleFormat() {
+	}
+
+	/**
+	 * Appends the shortest representation of a finite double value.
+	 */
+	static void appendDouble(@Nonnull final LineProtocolBuffer buffer, final double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		long ieeeMantissa = bits & ((1L << DOUBLE_MANTISSA_BITS) - 1);
+		int ieeeExponent = (int) ((bits >>> DOUBLE_MANTISSA_BITS) & ((1 << DOUBLE_EXPONENT_BITS) - 1));
+		appendShortest(buffer, bits < 0, ieeeMantissa, ieeeExponent, DOUBLE_MANTISSA_BITS, DOUBLE_BIAS);
+	}
+
+	/**
+	 * Appends the shortest representation of a finite float value, e.g. {@code 0.1} rather than the {@code 0.10000000149011612} of its
+	 * widened double value.
+	 */
+	static void appendFloat(@Nonnull final LineProtocolBuffer buffer, final float value) {
+		int bits = Float.floatToRawIntBits(value);
+		long ieeeMantissa = bits & ((1 << FLOAT_MANTISSA_BITS) - 1);
+		int ieeeExponent = (bits >>> FLOAT_MANTISSA_BITS) & ((1 << FLOAT_EXPONENT_BITS) - 1);
+		appendShortest(buffer, bits < 0, ieeeMantissa, ieeeExponent, FLOAT_MANTISSA_BITS, FLOAT_BIAS);
+	}
+
+	/**
+	 * Appends the exact value of a decimal. Values with up to 18 significant digits are written from their unscaled value, everything else
+	 * falls back to {@link BigDecimal#toString()}.
+	 */
+	static void appendBigDecimal(@Nonnull final LineProtocolBuffer buffer, @Nonnull final BigDecimal value) {
+		if (value.signum() == 0) {
+			buffer.append('0');
+			return;
+		}
+		int scale = value.scale();
+		if (value.precision() > 18 || scale < 0) {
+			buffer.append(value.toString());
+			return;
+		}
+		long unscaled = value.unscaledValue().longValue();
+		if (unscaled < 0) {
+			buffer.append('-');
+			unscaled = -unscaled;
+		}
+		int length = decimalLength(unscaled);
+		appendDecimal(buffer, unscaled, length, length - scale);
+	}
+
+	private static void appendShortest(LineProtocolBuffer buffer, boolean sign, long ieeeMantissa, int ieeeExponent, int mantissaBits,
+			int bias) {
+		if (ieeeExponent == 0 && ieeeMantissa == 0) {
+			buffer.append('0');
+			return;
+		}
+
+		int e2;
+		long m2;
+		if (ieeeExponent == 0) {
+			e2 = 1 - bias - mantissaBits - 2;
+			m2 = ieeeMantissa;
+		} else {
+			e2 = ieeeExponent - bias - mantissaBits - 2;
+			m2 = (1L << mantissaBits) | ieeeMantissa;
+		}
+		boolean acceptBounds = (m2 & 1) == 0;
+
+		// the value and the halfway points to its neighbours, mm = mv - 1 - mmShift and mp = mv + 2
+		long mv = 4 * m2;
+		int mmShift = ieeeMantissa != 0 || ieeeExponent <= 1 ? 1 : 0;
+
+		// convert to a decimal power base: vr = mv * 2^e2 / 10^e10, vp and vm accordingly
+		long vr;
+		long vp;
+		long vm;
+		int e10;
+		boolean vmIsTrailingZeros = false;
+		boolean vrIsTrailingZeros = false;
+		if (e2 >= 0) {
+			int q = Math.max(0, log10Pow2(e2) - 1);
+			e10 = q;
+			int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+			int i = -e2 + q + k;
+			vr = mulShift(mv, POW5_INV_LOW[q], POW5_INV_HIGH[q], i);
+			vp = mulShift(mv + 2, POW5_INV_LOW[q], POW5_INV_HIGH[q], i);
+			vm = mulShift(mv - 1 - mmShift, POW5_INV_LOW[q], POW5_INV_HIGH[q], i);
+			if (q <= 21) {
+				// only one of mp, mv and mm can be a multiple of 5, if any
+				if (mv % 5 == 0) {
+					vrIsTrailingZeros = multipleOfPowerOf5(mv, q);
+				} else if (acceptBounds) {
+					vmIsTrailingZeros = multipleOfPowerOf5(mv - 1 - mmShift, q);
+				} else if (multipleOfPowerOf5(mv + 2, q)) {
+					vp--;
+				}
+			}
+		} else {
+			int q = Math.max(0, log10Pow5(-e2) - 1);
+			e10 = q + e2;
+			int i = -e2 - q;
+			int k = pow5bits(i) - POW5_BITCOUNT;
+			int j = q - k;
+			vr = mulShift(mv, POW5_LOW[i], POW5_HIGH[i], j);
+			vp = mulShift(mv + 2, POW5_LOW[i], POW5_HIGH[i], j);
+			vm = mulShift(mv - 1 - mmShift, POW5_LOW[i], POW5_HIGH[i], j);
+			if (q <= 1) {
+				// mv has at least two trailing zero bits, so vr has at least q trailing decimal zeros
+				vrIsTrailingZeros = true;
+				if (acceptBounds) {
+					vmIsTrailingZeros = mmShift == 1;
+				} else {
+					vp--;
+				}
+			} else if (q < 63) {
+				vrIsTrailingZeros = multipleOfPowerOf2(mv, q);
+			}
+		}
+
+		// find the shortest representation in the interval of valid representations
+		int removed = 0;
+		int lastRemovedDigit = 0;
+		long output;
+		if (vmIsTrailingZeros || vrIsTrailingZeros) {
+			while (vp / 10 > vm / 10) {
+				vmIsTrailingZeros &= vm % 10 == 0;
+				vrIsTrailingZeros &= lastRemovedDigit == 0;
+				lastRemovedDigit = (int) (vr % 10);
+				vr /= 10;
+				vp /= 10;
+				vm /= 10;
+				removed++;
+			}
+			if (vmIsTrailingZeros) {
+				while (vm % 10 == 0) {
+					vrIsTrailingZeros &= lastRemovedDigit == 0;
+					lastRemovedDigit = (int) (vr % 10);
+					vr /= 10;
+					vp /= 10;
+					vm /= 10;
+					removed++;
+				}
+			}
+			if (vrIsTrailingZeros && lastRemovedDigit == 5 && vr % 2 == 0) {
+				// round even if the exact value is exactly halfway between two representations
+				lastRemovedDigit = 4;
+			}
+			boolean roundUp = (vr == vm && (!acceptBounds || !vmIsTrailingZeros)) || lastRemovedDigit >= 5;
+			output = vr + (roundUp ? 1 : 0);
+		} else {
+			boolean roundUp = false;
+			while (vp / 10 > vm / 10) {
+				roundUp = vr % 10 >= 5;
+				vr /= 10;
+				vp /= 10;
+				vm /= 10;
+				removed++;
+			}
+			output = vr + (vr == vm || roundUp ? 1 : 0);
+		}
+		int exponent = e10 + removed;
+
+		if (sign) {
+			buffer.append('-');
+		}
+		int length = decimalLength(output);
+		appendDecimal(buffer, output, length, exponent + length);
+	}
+
+	/**
+	 * Appends {@code 0.digits * 10^pointPosition}, where {@code digits} has {@code length} decimal digits.
+	 */
+	private static void appendDecimal(LineProtocolBuffer buffer, long digits, int length, int pointPosition) {
+		if (pointPosition >= length && pointPosition <= MAX_PLAIN_EXPONENT) {
+			buffer.append(digits);
+			appendZeros(buffer, pointPosition - length);
+		} else if (pointPosition > 0 && pointPosition <= MAX_PLAIN_EXPONENT) {
+			long divisor = POW10[length - pointPosition];
+			buffer.append(digits / divisor).append('.');
+			appendPadded(buffer, digits % divisor, length - pointPosition);
+		} else if (pointPosition > MIN_PLAIN_EXPONENT && pointPosition <= 0) {
+			buffer.append("0.");
+			appendZeros(buffer, -pointPosition);
+			buffer.append(digits);
+		} else {
+			long divisor = POW10[length - 1];
+			buffer.append(digits / divisor);
+			if (length > 1) {
+				buffer.append('.');
+				appendPadded(buffer, digits % divisor, length - 1);
+			}
+			int exponent = pointPosition - 1;
+			buffer.append(exponent < 0 ? "e-" : "e+").append(Math.abs(exponent));
+		}
+	}
+
+	private static void appendPadded(LineProtocolBuffer buffer, long value, int length) {
+		appendZeros(buffer, length - decimalLength(value));
+		buffer.append(value);
+	}
+
+	private static void appendZeros(LineProtocolBuffer buffer, int count) {
+		for (int i = 0; i < count; i++) {
+			buffer.append('0');
+		}
+	}
+
+	private static int decimalLength(long value) {
+		int length = 1;
+		while (length < POW10.length && value >= POW10[length]) {
+			length++;
+		}
+		return length;
+	}
+
+	// ceil(log2(5^e)) for 0 <= e <= 3528
+	private static int pow5bits(int e) {
+		return ((e * 1217359) >>> 19) + 1;
+	}
+
+	// floor(log10(2^e)) for 0 <= e <= 1650
+	private static int log10Pow2(int e) {
+		return (e * 78913) >>> 18;
+	}
+
+	// floor(log10(5^e)) for 0 <= e <= 2620
+	private static int log10Pow5(int e) {
+		return (e * 732923) >>> 20;
+	}
+
+	private static boolean multipleOfPowerOf5(long value, int p) {
+		int count = 0;
+		while (value > 0 && value % 5 == 0) {
+			value /= 5;
+			count++;
+		}
+		return count >= p;
+	}
+
+	private static boolean multipleOfPowerOf2(long value, int p) {
+		return (value & ((1L << p) - 1)) == 0;
+	}
+
+	/**
+	 * Computes {@code (m * (high * 2^64 + low)) >>> j} for a non-negative {@code m} below 2^58 and the 125 bit table values.
+	 */
+	private static long mulShift(long m, long low, long high, int j) {
+		long high1 = multiplyHighUnsigned(m, high);
+		long low1 = m * high;
+		long high0 = multiplyHighUnsigned(m, low);
+		long sum = high0 + low1;
+		if ((sum ^ Long.MIN_VALUE) < (high0 ^ Long.MIN_VALUE)) {
+			high1++;
+		}
+		return shiftRight128(sum, high1, j - 64);
+	}
+
+	private static long shiftRight128(long low, long high, int distance) {
+		if (distance == 0) {
+			return low;
+		} else if (distance < 64) {
+			return (high << (64 - distance)) | (low >>> distance);
+		}
+		return high >>> (distance - 64);
+	}
+
+	private static long multiplyHighUnsigned(long a, long b) {
+		long aLow = a & 0xFFFFFFFFL;
+		long aHigh = a >>> 32;
+		long bLow = b & 0xFFFFFFFFL;
+		long bHigh = b >>> 32;
+		long t = aHigh * bLow + ((aLow * bLow) >>> 32);
+		long w = (t & 0xFFFFFFFFL) + aLow * bHigh;
+		return aHigh * bHigh + (t >>> 32) + (w >>> 32);
+	}
+}
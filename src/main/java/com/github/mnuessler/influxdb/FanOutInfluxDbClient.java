@@ -0,0 +1,197 @@
+package com.github.mnuessler.influxdb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client writing every payload to several destinations, e.g. a regional and a central InfluxDB server. The payload is copied once and
+ * the copy is shared by all destinations. Each destination has its own queue and sender thread, so a slow or failing destination
+ * neither delays the caller nor the other destinations; once its queue is full, batches are dropped for that destination only.
+ * Timeouts are those of the client of each destination.
+ */
+public class FanOutInfluxDbClient implements FlushableInfluxDbClient, Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FanOutInfluxDbClient.class);
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static class Builder {
+		private final List<InfluxDbClient> clients = new ArrayList<>();
+
+		private final List<String> databases = new ArrayList<>();
+
+		private final List<String> retentionPolicies = new ArrayList<>();
+
+		private int queueCapacity = 10;
+
+		private AsyncInfluxDbClient.DropPolicy dropPolicy = AsyncInfluxDbClient.DropPolicy.DROP_OLDEST;
+
+		private Builder() {
+		}
+
+		/**
+		 * Adds a destination receiving payloads for the database and retention policy they were written for.
+		 */
+		public Builder withDestination(@Nonnull InfluxDbClient client) {
+			return withDestination(client, null, null);
+		}
+
+		/**
+		 * Adds a destination receiving payloads for the given database and retention policy, regardless of the database and retention
+		 * policy they were written for. A {@code null} database keeps the database and retention policy of the payload.
+		 */
+		public Builder withDestination(@Nonnull InfluxDbClient client, @Nullable String database, @Nullable String retentionPolicy) {
+			this.clients.add(client);
+			this.databases.add(database);
+			this.retentionPolicies.add(retentionPolicy);
+			return this;
+		}
+
+		/**
+		 * Maximum number of batches queued per destination.
+		 */
+		public Builder withQueueCapacity(int queueCapacity) {
+			if (queueCapacity < 1) {
+				throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+			}
+			this.queueCapacity = queueCapacity;
+			return this;
+		}
+
+		public Builder withDropPolicy(@Nonnull AsyncInfluxDbClient.DropPolicy dropPolicy) {
+			this.dropPolicy = dropPolicy;
+			return this;
+		}
+
+		public FanOutInfluxDbClient build() {
+			if (clients.isEmpty()) {
+				throw new IllegalArgumentException("At least one destination required");
+			}
+			List<Destination> destinations = new ArrayList<>(clients.size());
+			for (int i = 0; i < clients.size(); i++) {
+				AsyncInfluxDbClient queue = AsyncInfluxDbClient.wrap(clients.get(i))
+						.withQueueCapacity(queueCapacity)
+						.withDropPolicy(dropPolicy)
+						.build();
+				destinations.add(new Destination(queue, databases.get(i), retentionPolicies.get(i)));
+			}
+			return new FanOutInfluxDbClient(destinations);
+		}
+	}
+
+	private final List<Destination> destinations;
+
+	private FanOutInfluxDbClient(List<Destination> destinations) {
+		this.destinations = destinations;
+	}
+
+	@Override
+	public void write(@Nonnull CharSequence payload, @Nonnull String database, @Nullable String retentionPolicy) throws IOException {
+		write(payload.toString().getBytes(CHARSET), database, retentionPolicy);
+	}
+
+	@Override
+	public void write(@Nonnull LineProtocolBuffer payload, @Nonnull String database, @Nullable String retentionPolicy)
+			throws IOException {
+		write(payload.toByteArray(), database, retentionPolicy);
+	}
+
+	private void write(byte[] payload, String database, String retentionPolicy) throws IOException {
+		IOException failure = null;
+		for (Destination destination : destinations) {
+			try {
+				if (destination.database != null) {
+					destination.queue.write(payload, destination.database, destination.retentionPolicy);
+				} else {
+					destination.queue.write(payload, database, retentionPolicy);
+				}
+			} catch (IOException e) {
+				// still hand the payload to the remaining destinations
+				failure = e;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	@Override
+	public boolean flush(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		boolean flushed = true;
+		for (Destination destination : destinations) {
+			long remaining = Math.max(0, deadline - System.nanoTime());
+			if (!destination.queue.flush(remaining, TimeUnit.NANOSECONDS)) {
+				LOG.debug("Timed out waiting for {} queued payloads to be sent to database '{}'", destination.queue.getQueueSize(),
+						destination.database);
+				flushed = false;
+			}
+		}
+		return flushed;
+	}
+
+	/**
+	 * Number of batches queued for all destinations.
+	 */
+	@Override
+	public int getQueueSize() {
+		int queueSize = 0;
+		for (Destination destination : destinations) {
+			queueSize += destination.queue.getQueueSize();
+		}
+		return queueSize;
+	}
+
+	/**
+	 * Number of batches dropped for all destinations.
+	 */
+	@Override
+	public long getDroppedBatches() {
+		long droppedBatches = 0;
+		for (Destination destination : destinations) {
+			droppedBatches += destination.queue.getDroppedBatches();
+		}
+		return droppedBatches;
+	}
+
+	/**
+	 * Number of batches dropped for the destination added at the given position.
+	 */
+	public long getDroppedBatches(int destination) {
+		return destinations.get(destination).queue.getDroppedBatches();
+	}
+
+	/**
+	 * Stops the sender threads of all destinations, see {@link AsyncInfluxDbClient#close()}. The clients of the destinations are not
+	 * closed.
+	 */
+	@Override
+	public void close() {
+		for (Destination destination : destinations) {
+			destination.queue.close();
+		}
+	}
+
+	private static final class Destination {
+		private final AsyncInfluxDbClient queue;
+		private final String database;
+		private final String retentionPolicy;
+
+		private Destination(AsyncInfluxDbClient queue, String database, String retentionPolicy) {
+			this.queue = queue;
+			this.database = database;
+			this.retentionPolicy = retentionPolicy;
+		}
+	}
+}
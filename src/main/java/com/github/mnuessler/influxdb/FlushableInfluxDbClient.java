@@ -0,0 +1,23 @@
+package com.github.mnuessler.influxdb;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Client queueing payloads to be sent in the background.
+ */
+public interface FlushableInfluxDbClient extends InfluxDbClient {
+
+	/**
+	 * Waits until all queued batches have been sent or the timeout expires.
+	 *
+	 * @return {@code true} if all batches have been sent
+	 */
+	boolean flush(long timeout, @Nonnull TimeUnit unit) throws InterruptedException;
+
+	int getQueueSize();
+
+	long getDroppedBatches();
+
+}
@@ -0,0 +1,84 @@
+package com.github.mnuessler.influxdb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnull;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HTTP;
+
+/**
+ * Wraps a request entity to compress it with gzip while it is written to the connection. The compressed content is never held in memory
+ * as a whole when written; it is sent with chunked transfer encoding since its length is not known up front.
+ */
+class GzipEntity extends HttpEntityWrapper {
+
+	private static final Header CONTENT_ENCODING = new BasicHeader(HTTP.CONTENT_ENCODING, "gzip");
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final int compressionLevel;
+
+	GzipEntity(@Nonnull final HttpEntity entity, final int compressionLevel) {
+		super(entity);
+		this.compressionLevel = compressionLevel;
+	}
+
+	@Override
+	public Header getContentEncoding() {
+		return CONTENT_ENCODING;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public boolean isChunked() {
+		return true;
+	}
+
+	/**
+	 * Returns the compressed content, which is compressed into memory for that, for consumers reading the entity instead of writing it.
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTo(out);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	@Override
+	public void writeTo(final OutputStream out) throws IOException {
+		LevelGzipOutputStream gzip = new LevelGzipOutputStream(out, compressionLevel);
+		try {
+			wrappedEntity.writeTo(gzip);
+			gzip.finish();
+		} finally {
+			// the underlying stream belongs to the connection and must not be closed
+			gzip.releaseDeflater();
+		}
+		out.flush();
+	}
+
+	private static final class LevelGzipOutputStream extends GZIPOutputStream {
+
+		private LevelGzipOutputStream(OutputStream out, int level) throws IOException {
+			super(out, BUFFER_SIZE);
+			def.setLevel(level);
+		}
+
+		private void releaseDeflater() {
+			def.end();
+		}
+	}
+}
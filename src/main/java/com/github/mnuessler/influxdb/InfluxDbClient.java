@@ -15,4 +15,10 @@ public interface InfluxDbClient {
 
 	void write(@Nonnull CharSequence payload, @Nonnull String database, @Nullable String retentionPolicy) throws IOException;
 
+	/**
+	 * Writes the UTF-8 encoded line protocol held by the given buffer. The buffer is neither modified nor retained after this method
+	 * returns, so callers may reuse it for the next payload.
+	 */
+	void write(@Nonnull LineProtocolBuffer payload, @Nonnull String database, @Nullable String retentionPolicy) throws IOException;
+
 }
@@ -1,100 +1,370 @@
 package com.github.mnuessler.influxdb;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
-import org.apache.http.auth.Credentials;
-import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.fluent.Executor;
-import org.apache.http.client.fluent.Request;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class InfluxDbHcClient implements InfluxDbClient {
+import com.codahale.metrics.MetricRegistry;
+
+public class InfluxDbHcClient implements InfluxDbClient, Closeable {
 
     private static final Logger LOG = LoggerFactory.getLogger(InfluxDbHcClient.class);
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
     private static final ContentType CONTENT_TYPE = ContentType.create(InfluxDbClient.CONTENT_TYPE, InfluxDbClient.CHARSET);
 
+    private static final ResponseHandler<Integer> RESPONSE_HANDLER = new InfluxDbWriteResponseHandler();
+
+    static final String DEFAULT_SELF_METRICS_PREFIX = "influxdb.client";
+
     public static Builder forUrl(String influxDbUrl) {
 		return new Builder(influxDbUrl);
 	}
 
 	public static class Builder {
-		private HttpClient client = HttpClients.createDefault();
+		private HttpClient client;
 
 		private URI influxDbWriteUrl;
 
-		private Credentials credentials;
+		private String authorization;
+
+		private int socketTimeout = 5000;
+
+		private int connectTimeout = 5000;
+
+		private int maxConnections = 4;
+
+		private long keepAliveMillis = TimeUnit.MINUTES.toMillis(1);
+
+		private boolean gzip;
 
-		private int socketTimeout = 5;
+		private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
 
-		private int connectTimeout = 5;
+		private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+		private int maxRetries = 2;
+
+		private long initialBackoffMillis = 200;
+
+		private long maxBackoffMillis = 5000;
+
+		private int circuitBreakerThreshold = 5;
+
+		private long circuitBreakerOpenMillis = TimeUnit.SECONDS.toMillis(30);
+
+		private Precision precision = Precision.MILLISECONDS;
+
+		private MetricRegistry selfMetricsRegistry;
+
+		private String selfMetricsPrefix = DEFAULT_SELF_METRICS_PREFIX;
 
 		private Builder(@Nonnull String influxDbUrl) {
 			this.influxDbWriteUrl = URI.create(influxDbUrl + "/write").normalize();
 		}
 
+		/**
+		 * Credentials sent preemptively with every request using basic authentication.
+		 */
 		public Builder withCredentials(@Nonnull String username, @Nonnull String password) {
-			this.credentials = new UsernamePasswordCredentials(username, password);
+			byte[] credentials = (username + ":" + password).getBytes(InfluxDbClient.CHARSET);
+			this.authorization = "Basic " + Base64.encodeBase64String(credentials);
 			return this;
 		}
 
+		/**
+		 * Uses the given client instead of a pooled client owned by this instance. Connection pool settings do not apply, and the given
+		 * client is not closed by {@link InfluxDbHcClient#close()}.
+		 */
 		public Builder withHttpClient(@Nonnull HttpClient client) {
 			this.client = client;
 			return this;
 		}
 
-		private Builder withSocketTimeout(int socketTimeout) {
+		/**
+		 * Socket timeout in milliseconds, defaults to 5 seconds.
+		 */
+		public Builder withSocketTimeout(int socketTimeout) {
 			this.socketTimeout = socketTimeout;
 			return this;
 		}
 
-		private Builder withConnectTimeout(int connectTimeout) {
+		/**
+		 * Timeout in milliseconds for establishing a connection and for obtaining one from the pool, defaults to 5 seconds.
+		 */
+		public Builder withConnectTimeout(int connectTimeout) {
 			this.connectTimeout = connectTimeout;
 			return this;
 		}
 
-		public InfluxDbClient build() {
-			return new InfluxDbHcClient(client, influxDbWriteUrl, credentials, socketTimeout, connectTimeout);
+		/**
+		 * Maximum number of pooled connections to the server.
+		 */
+		public Builder withMaxConnections(int maxConnections) {
+			if (maxConnections < 1) {
+				throw new IllegalArgumentException("Maximum number of connections must be positive: " + maxConnections);
+			}
+			this.maxConnections = maxConnections;
+			return this;
+		}
+
+		/**
+		 * Time an idle connection is kept open for reuse, unless the server asks for a shorter time with a {@code Keep-Alive} header.
+		 */
+		public Builder withKeepAlive(long keepAlive, @Nonnull TimeUnit unit) {
+			this.keepAliveMillis = unit.toMillis(keepAlive);
+			return this;
+		}
+
+		/**
+		 * Sends payloads with {@code Content-Encoding: gzip}, compressing them while they are written to the connection.
+		 */
+		public Builder withGzip() {
+			this.gzip = true;
+			return this;
+		}
+
+		/**
+		 * Compression level from 1 (fastest) to 9 (best compression), defaults to the zlib default.
+		 */
+		public Builder withCompressionLevel(int compressionLevel) {
+			if ((compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION)
+					&& compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+				throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+			}
+			this.compressionLevel = compressionLevel;
+			return this;
+		}
+
+		/**
+		 * Payloads smaller than the given number of bytes are sent uncompressed even if gzip is enabled.
+		 */
+		public Builder withCompressionThreshold(int compressionThreshold) {
+			this.compressionThreshold = compressionThreshold;
+			return this;
+		}
+
+		/**
+		 * Number of times a write is retried after an I/O error or a 408, 429 or 5xx response. Other 4xx responses, such as a 400 caused
+		 * by invalid line protocol, are never retried.
+		 */
+		public Builder withMaxRetries(int maxRetries) {
+			if (maxRetries < 0) {
+				throw new IllegalArgumentException("Number of retries must not be negative: " + maxRetries);
+			}
+			this.maxRetries = maxRetries;
+			return this;
+		}
+
+		/**
+		 * Retries wait a random time of up to the initial backoff, doubling the bound for each further retry up to the maximum. A
+		 * {@code Retry-After} header sent by the server takes precedence, if it asks for a wait longer than the maximum the write fails
+		 * without further retries.
+		 */
+		public Builder withBackoff(long initialBackoff, long maxBackoff, @Nonnull TimeUnit unit) {
+			if (initialBackoff < 1 || maxBackoff < initialBackoff) {
+				throw new IllegalArgumentException("Invalid backoff: " + initialBackoff + " to " + maxBackoff);
+			}
+			this.initialBackoffMillis = unit.toMillis(initialBackoff);
+			this.maxBackoffMillis = unit.toMillis(maxBackoff);
+			return this;
+		}
+
+		/**
+		 * Rejects writes without contacting the server for the given duration after the given number of consecutive failed attempts.
+		 */
+		public Builder withCircuitBreaker(int failureThreshold, long openDuration, @Nonnull TimeUnit unit) {
+			if (failureThreshold < 1) {
+				throw new IllegalArgumentException("Failure threshold must be positive: " + failureThreshold);
+			}
+			this.circuitBreakerThreshold = failureThreshold;
+			this.circuitBreakerOpenMillis = unit.toMillis(openDuration);
+			return this;
+		}
+
+		public Builder withoutCircuitBreaker() {
+			this.circuitBreakerThreshold = 0;
+			return this;
+		}
+
+		/**
+		 * Precision of the timestamps in the payloads, defaults to milliseconds.
+		 */
+		public Builder withPrecision(@Nonnull Precision precision) {
+			this.precision = precision;
+			return this;
+		}
+
+		/**
+		 * Publishes metrics about the requests into the given registry: request latency and size, responses by status code, I/O errors,
+		 * retries, failed writes and whether the circuit breaker is open.
+		 */
+		public Builder withSelfMetrics(@Nonnull MetricRegistry registry) {
+			return withSelfMetrics(registry, DEFAULT_SELF_METRICS_PREFIX);
+		}
+
+		public Builder withSelfMetrics(@Nonnull MetricRegistry registry, @Nonnull String prefix) {
+			this.selfMetricsRegistry = registry;
+			this.selfMetricsPrefix = prefix;
+			return this;
+		}
+
+		public InfluxDbHcClient build() {
+			int threshold = gzip ? compressionThreshold : Integer.MAX_VALUE;
+			boolean ownsClient = client == null;
+			HttpClient httpClient = ownsClient ? createPooledClient() : client;
+			// every client gets its own breaker, clients built from the same builder must not trip each other's
+			CircuitBreaker circuitBreaker = circuitBreakerThreshold > 0
+					? new CircuitBreaker(circuitBreakerThreshold, circuitBreakerOpenMillis, TimeUnit.MILLISECONDS)
+					: null;
+			return new InfluxDbHcClient(httpClient, ownsClient, influxDbWriteUrl, authorization, socketTimeout, connectTimeout,
+					compressionLevel, threshold, precision, maxRetries, initialBackoffMillis, maxBackoffMillis, circuitBreaker,
+					selfMetricsRegistry != null ? new ClientMetrics(selfMetricsRegistry, selfMetricsPrefix, circuitBreaker) : null);
+		}
+
+		private CloseableHttpClient createPooledClient() {
+			PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+			connectionManager.setMaxTotal(maxConnections);
+			connectionManager.setDefaultMaxPerRoute(maxConnections);
+			final long keepAlive = keepAliveMillis;
+			return HttpClients.custom()
+					.setConnectionManager(connectionManager)
+					.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+						@Override
+						public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+							long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+							return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+						}
+					})
+					.evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+					// failed writes are retried by this class
+					.disableAutomaticRetries()
+					.disableCookieManagement()
+					.build();
 		}
 
 	}
 
     private final HttpClient client;
 
+	private final boolean ownsClient;
+
 	private final URI influxDbWriteUrl;
 
-	private final Credentials credentials;
+	private final String authorization;
+
+	private final RequestConfig requestConfig;
+
+	private final int compressionLevel;
+
+	private final int compressionThreshold;
+
+	private final int maxRetries;
+
+	private final long initialBackoffMillis;
+
+	private final long maxBackoffMillis;
+
+	private final CircuitBreaker circuitBreaker;
+
+	private final ClientMetrics selfMetrics;
+
+	private final AtomicLong retries = new AtomicLong();
 
-	private final int socketTimeout;
+	private final AtomicLong failedWrites = new AtomicLong();
 
-	private final int connectTimeout;
+	private final Precision precision;
 
-	private final Precision precision = Precision.MILLISECONDS;
+	// target URLs by database and retention policy, the empty string standing for the default policy
+	private final ConcurrentMap<String, ConcurrentMap<String, URI>> targetUrls = new ConcurrentHashMap<>();
 
-	private InfluxDbHcClient(@Nonnull HttpClient client, @Nonnull URI influxDbWriteUrl, @Nullable Credentials credentials,
-			int socketTimeout, int connectTimeout) {
+	private InfluxDbHcClient(@Nonnull HttpClient client, boolean ownsClient, @Nonnull URI influxDbWriteUrl,
+			@Nullable String authorization, int socketTimeout, int connectTimeout, int compressionLevel, int compressionThreshold,
+			@Nonnull Precision precision, int maxRetries, long initialBackoffMillis, long maxBackoffMillis,
+			@Nullable CircuitBreaker circuitBreaker, @Nullable ClientMetrics selfMetrics) {
 		this.client = client;
+		this.ownsClient = ownsClient;
 		this.influxDbWriteUrl = influxDbWriteUrl;
-		this.credentials = credentials;
-		this.socketTimeout = socketTimeout;
-		this.connectTimeout = connectTimeout;
+		this.authorization = authorization;
+		this.requestConfig = RequestConfig.custom()
+				.setSocketTimeout(socketTimeout)
+				.setConnectTimeout(connectTimeout)
+				.setConnectionRequestTimeout(connectTimeout)
+				.build();
+		this.compressionLevel = compressionLevel;
+		this.compressionThreshold = compressionThreshold;
+		this.precision = precision;
+		this.maxRetries = maxRetries;
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+		this.circuitBreaker = circuitBreaker;
+		this.selfMetrics = selfMetrics;
+	}
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Total number of retried attempts.
+	 */
+	public long getRetryCount() {
+		return retries.get();
+	}
+
+	/**
+	 * Number of writes that failed after all retries or were rejected by the circuit breaker.
+	 */
+	public long getFailedWriteCount() {
+		return failedWrites.get();
+	}
+
+	/**
+	 * Returns the circuit breaker, or {@code null} if it has been disabled.
+	 */
+	@Nullable
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
 	}
 
 	/**
@@ -129,35 +399,188 @@ public class InfluxDbHcClient implements InfluxDbClient {
 	 */
 	@Override
 	public void write(@Nonnull CharSequence payload, @Nonnull String database, @Nullable String retentionPolicy) throws IOException {
-		URIBuilder builder = new URIBuilder(influxDbWriteUrl).setParameter("db", database).setParameter("precision", precision.getUnit());
+		execute(new StringEntity(payload.toString(), CONTENT_TYPE), database, retentionPolicy);
+	}
+
+	@Override
+	public void write(@Nonnull LineProtocolBuffer payload, @Nonnull String database, @Nullable String retentionPolicy)
+			throws IOException {
+		execute(new LineProtocolEntity(payload, CONTENT_TYPE), database, retentionPolicy);
+	}
 
-		if (retentionPolicy != null && !"default".equalsIgnoreCase(retentionPolicy)) {
-			builder.setParameter("rp", retentionPolicy);
+	private void execute(HttpEntity entity, String database, String retentionPolicy) throws IOException {
+		int attempt = 0;
+		IOException lastFailure = null;
+		while (true) {
+			if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+				countFailedWrite();
+				// the breaker may have opened on one of our own retries, the caller needs to see why
+				throw new IOException("Circuit breaker is open, not sending metrics to InfluxDB", lastFailure);
+			}
+			try {
+				executeOnce(entity, database, retentionPolicy);
+				if (circuitBreaker != null) {
+					circuitBreaker.recordSuccess();
+				}
+				return;
+			} catch (IOException e) {
+				boolean retryable = isRetryable(e);
+				if (circuitBreaker != null) {
+					// the server is healthy if it rejects the request
+					if (e instanceof HttpResponseException && !retryable) {
+						circuitBreaker.recordSuccess();
+					} else {
+						circuitBreaker.recordFailure();
+					}
+				}
+				long backoffMillis = retryable && attempt < maxRetries ? backoffMillis(attempt, e) : -1;
+				if (backoffMillis < 0) {
+					countFailedWrite();
+					throw e;
+				}
+				LOG.debug("Write attempt {} failed, retrying in {} ms", attempt + 1, backoffMillis, e);
+				lastFailure = e;
+				sleep(backoffMillis);
+				countRetry();
+				attempt++;
+			} catch (RuntimeException e) {
+				// e.g. a closed connection pool, must not leave a half-open breaker waiting for its trial request forever
+				if (circuitBreaker != null) {
+					circuitBreaker.recordFailure();
+				}
+				countFailedWrite();
+				throw e;
+			}
+		}
+	}
+
+	private void countFailedWrite() {
+		failedWrites.incrementAndGet();
+		if (selfMetrics != null) {
+			selfMetrics.failedWrites.inc();
 		}
+	}
+
+	private void countRetry() {
+		retries.incrementAndGet();
+		if (selfMetrics != null) {
+			selfMetrics.retries.inc();
+		}
+	}
 
-		URI targetUrl;
+	private static boolean isRetryable(IOException e) {
+		if (Thread.currentThread().isInterrupted()) {
+			return false;
+		}
+		if (e instanceof HttpResponseException) {
+			int statusCode = ((HttpResponseException) e).getStatusCode();
+			return statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR || statusCode == SC_TOO_MANY_REQUESTS
+					|| statusCode == HttpStatus.SC_REQUEST_TIMEOUT;
+		}
+		// timeouts are interrupted I/O as well, but mean a slow or overloaded server
+		return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException || e instanceof ConnectTimeoutException;
+	}
+
+	/**
+	 * Returns the time to wait before the next attempt, or -1 if the server asks for a longer wait than the maximum backoff.
+	 */
+	private long backoffMillis(int attempt, IOException e) {
+		if (e instanceof InfluxDbResponseException) {
+			long retryAfterMillis = ((InfluxDbResponseException) e).retryAfterMillis;
+			if (retryAfterMillis >= 0) {
+				return retryAfterMillis <= maxBackoffMillis ? retryAfterMillis : -1;
+			}
+		}
+		long bound = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt, 30));
+		return ThreadLocalRandom.current().nextLong(bound + 1);
+	}
+
+	private static void sleep(long millis) throws InterruptedIOException {
 		try {
-			targetUrl = builder.build();
-		} catch (URISyntaxException e) {
-			throw new IOException(e);
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry");
+		}
+	}
+
+	private void executeOnce(HttpEntity entity, String database, String retentionPolicy) throws IOException {
+		// the length of the line protocol, the compressed length is not known before the request was sent
+		long contentLength = entity.getContentLength();
+		if (contentLength >= compressionThreshold) {
+			entity = new GzipEntity(entity, compressionLevel);
 		}
 
-        Executor executor = Executor.newInstance(client);
-		if (credentials != null) {
-			executor.auth(new HttpHost(influxDbWriteUrl.getHost(), influxDbWriteUrl.getPort()), credentials);
+		HttpPost request = new HttpPost(targetUrl(database, retentionPolicy));
+		request.setConfig(requestConfig);
+		if (authorization != null) {
+			request.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+		}
+		request.setEntity(entity);
+		if (selfMetrics == null) {
+			client.execute(request, RESPONSE_HANDLER);
+			return;
+		}
+
+		selfMetrics.requestSize.update(contentLength);
+		long start = System.nanoTime();
+		try {
+			selfMetrics.response(client.execute(request, RESPONSE_HANDLER));
+		} catch (HttpResponseException e) {
+			selfMetrics.response(e.getStatusCode());
+			throw e;
+		} catch (IOException e) {
+			selfMetrics.ioErrors.inc();
+			throw e;
+		} finally {
+			selfMetrics.requestTime.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 		}
+	}
+
+	private URI targetUrl(String database, String retentionPolicy) throws IOException {
+		String policy = retentionPolicy == null || "default".equalsIgnoreCase(retentionPolicy) ? "" : retentionPolicy;
+		ConcurrentMap<String, URI> urlsByPolicy = targetUrls.get(database);
+		if (urlsByPolicy == null) {
+			urlsByPolicy = new ConcurrentHashMap<>();
+			ConcurrentMap<String, URI> existing = targetUrls.putIfAbsent(database, urlsByPolicy);
+			if (existing != null) {
+				urlsByPolicy = existing;
+			}
+		}
+		URI targetUrl = urlsByPolicy.get(policy);
+		if (targetUrl == null) {
+			URIBuilder builder = new URIBuilder(influxDbWriteUrl)
+					.setParameter("db", database)
+					.setParameter("precision", precision.getUnit());
+			if (!policy.isEmpty()) {
+				builder.setParameter("rp", policy);
+			}
+			try {
+				targetUrl = builder.build();
+			} catch (URISyntaxException e) {
+				throw new IOException(e);
+			}
+			urlsByPolicy.put(policy, targetUrl);
+		}
+		return targetUrl;
+	}
 
-        executor.execute(
-            Request.Post(targetUrl)
-                .socketTimeout(socketTimeout)
-                .connectTimeout(connectTimeout)
-                .bodyString(payload.toString(), CONTENT_TYPE))
-            .handleResponse(new InfluxDbWriteResponseHandler());
+	/**
+	 * Closes the connection pool, unless the HTTP client has been passed to the builder.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (ownsClient) {
+			((CloseableHttpClient) client).close();
+		}
 	}
 
-	private static class InfluxDbWriteResponseHandler implements ResponseHandler {
+	/**
+	 * Returns the status code of a successful response.
+	 */
+	private static class InfluxDbWriteResponseHandler implements ResponseHandler<Integer> {
 		@Override
-		public Void handleResponse(final HttpResponse response) throws IOException {
+		public Integer handleResponse(final HttpResponse response) throws IOException {
 			StatusLine statusLine = response.getStatusLine();
 			int statusCode = statusLine.getStatusCode();
 
@@ -168,9 +591,37 @@ public class InfluxDbHcClient implements InfluxDbClient {
                         LOG.debug("Response body: {}", EntityUtils.toString(entity, InfluxDbClient.CHARSET));
                     }
                 }
-				throw new HttpResponseException(statusCode, "InfluxDB server responded with: " + statusLine);
+				throw new InfluxDbResponseException(statusCode, "InfluxDB server responded with: " + statusLine,
+						retryAfterMillis(response.getFirstHeader(HttpHeaders.RETRY_AFTER)));
+			}
+			return statusCode;
+		}
+
+		private static long retryAfterMillis(Header retryAfter) {
+			if (retryAfter == null) {
+				return -1;
 			}
-			return null;
+			String value = retryAfter.getValue().trim();
+			try {
+				return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+			} catch (NumberFormatException e) {
+				Date date = DateUtils.parseDate(value);
+				return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+			}
+		}
+	}
+
+	/**
+	 * Non-successful response, carrying the wait requested by a {@code Retry-After} header or -1.
+	 */
+	private static class InfluxDbResponseException extends HttpResponseException {
+		private static final long serialVersionUID = 1L;
+
+		private final long retryAfterMillis;
+
+		private InfluxDbResponseException(int statusCode, String message, long retryAfterMillis) {
+			super(statusCode, message);
+			this.retryAfterMillis = retryAfterMillis;
 		}
 	}
 }
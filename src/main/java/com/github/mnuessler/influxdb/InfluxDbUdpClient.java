@@ -0,0 +1,210 @@
+package com.github.mnuessler.influxdb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client sending line protocol to the UDP listener of an InfluxDB server. Lines are packed into datagrams of at most the configured
+ * size, a line is never split across datagrams. Sending never blocks: a datagram that does not fit into the socket's send buffer is
+ * dropped, and nothing tells whether the server received a datagram.
+ * <p>
+ * The database and retention policy of the points, as well as the precision of their timestamps, are set by the configuration of the
+ * UDP listener on the server. The database and retention policy passed to {@code write} are ignored, unless the builder was told which
+ * database the listener writes to, in which case writes for any other database are rejected.
+ */
+public class InfluxDbUdpClient implements InfluxDbClient, Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(InfluxDbUdpClient.class);
+
+	private static final byte LINE_SEPARATOR = '\n';
+
+	/**
+	 * Fits into an Ethernet frame with IPv4 or IPv6 and UDP headers.
+	 */
+	static final int DEFAULT_MAX_DATAGRAM_SIZE = 1400;
+
+	public static Builder forListener(@Nonnull final String host, final int port) {
+		return new Builder(new InetSocketAddress(host, port));
+	}
+
+	public static Builder forListener(@Nonnull final InetSocketAddress address) {
+		return new Builder(address);
+	}
+
+	public static class Builder {
+		private final InetSocketAddress address;
+
+		private int maxDatagramSize = DEFAULT_MAX_DATAGRAM_SIZE;
+
+		private String database;
+
+		private String retentionPolicy;
+
+		private Builder(@Nonnull InetSocketAddress address) {
+			this.address = address;
+		}
+
+		/**
+		 * Maximum payload size of a datagram. Lines longer than this are dropped. Datagrams larger than the path MTU are fragmented,
+		 * and are lost completely if any fragment is lost.
+		 */
+		public Builder withMaxDatagramSize(int maxDatagramSize) {
+			if (maxDatagramSize < 1 || maxDatagramSize > 65507) {
+				throw new IllegalArgumentException("Invalid datagram size: " + maxDatagramSize);
+			}
+			this.maxDatagramSize = maxDatagramSize;
+			return this;
+		}
+
+		/**
+		 * The database and retention policy the UDP listener on the server writes to. Writes for other databases or retention policies
+		 * are then rejected instead of ending up in the listener's database.
+		 */
+		public Builder withDatabase(@Nonnull String database, @Nullable String retentionPolicy) {
+			this.database = database;
+			this.retentionPolicy = retentionPolicy;
+			return this;
+		}
+
+		public InfluxDbUdpClient build() throws IOException {
+			return new InfluxDbUdpClient(address, maxDatagramSize, database, retentionPolicy);
+		}
+	}
+
+	private final DatagramChannel channel;
+
+	private final ByteBuffer datagram;
+
+	private final String database;
+
+	private final String retentionPolicy;
+
+	private final AtomicLong sentDatagrams = new AtomicLong();
+
+	private final AtomicLong droppedDatagrams = new AtomicLong();
+
+	private final AtomicLong droppedLines = new AtomicLong();
+
+	private InfluxDbUdpClient(InetSocketAddress address, int maxDatagramSize, String database, String retentionPolicy)
+			throws IOException {
+		this.channel = DatagramChannel.open();
+		channel.configureBlocking(false);
+		channel.connect(address);
+		this.datagram = ByteBuffer.allocateDirect(maxDatagramSize);
+		this.database = database;
+		this.retentionPolicy = retentionPolicy;
+	}
+
+	@Override
+	public void write(@Nonnull CharSequence payload, @Nonnull String database, @Nullable String retentionPolicy) throws IOException {
+		write(LineProtocolBuffer.wrap(payload.toString().getBytes(CHARSET)), database, retentionPolicy);
+	}
+
+	@Override
+	public synchronized void write(@Nonnull LineProtocolBuffer payload, @Nonnull String database, @Nullable String retentionPolicy)
+			throws IOException {
+		checkTarget(database, retentionPolicy);
+
+		int length = payload.length();
+		int lineStart = 0;
+		int oversizedLines = 0;
+		int longestLine = 0;
+		((Buffer) datagram).clear();
+		while (lineStart < length) {
+			int lineEnd = payload.indexOf(LINE_SEPARATOR, lineStart);
+			int next = lineEnd < 0 ? length : lineEnd + 1;
+			int lineLength = next - lineStart;
+			if (lineLength > datagram.capacity()) {
+				droppedLines.incrementAndGet();
+				oversizedLines++;
+				longestLine = Math.max(longestLine, lineLength);
+			} else {
+				if (lineLength > datagram.remaining()) {
+					send();
+				}
+				payload.copyTo(lineStart, lineLength, datagram);
+			}
+			lineStart = next;
+		}
+		if (datagram.position() > 0) {
+			send();
+		}
+		if (oversizedLines > 0) {
+			// once per write, the same lines are usually too long on every report
+			LOG.warn("Dropped {} lines of up to {} bytes exceeding the maximum datagram size of {} bytes", oversizedLines, longestLine,
+					datagram.capacity());
+		}
+	}
+
+	/**
+	 * Number of datagrams handed to the network stack.
+	 */
+	public long getSentDatagrams() {
+		return sentDatagrams.get();
+	}
+
+	/**
+	 * Number of datagrams dropped because the socket's send buffer was full.
+	 */
+	public long getDroppedDatagrams() {
+		return droppedDatagrams.get();
+	}
+
+	/**
+	 * Number of lines dropped because they exceed the maximum datagram size.
+	 */
+	public long getDroppedLines() {
+		return droppedLines.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void checkTarget(String database, String retentionPolicy) throws IOException {
+		if (this.database == null) {
+			return;
+		}
+		if (!this.database.equals(database) || !isSameRetentionPolicy(this.retentionPolicy, retentionPolicy)) {
+			throw new IOException("UDP listener writes to database '" + this.database + "' and retention policy '" + this.retentionPolicy
+					+ "', not '" + database + "' and '" + retentionPolicy + "'");
+		}
+	}
+
+	private static boolean isSameRetentionPolicy(String expected, String actual) {
+		boolean expectedDefault = expected == null || "default".equalsIgnoreCase(expected);
+		boolean actualDefault = actual == null || "default".equalsIgnoreCase(actual);
+		return expectedDefault ? actualDefault : expected.equals(actual);
+	}
+
+	private void send() throws IOException {
+		((Buffer) datagram).flip();
+		try {
+			if (channel.write(datagram) > 0) {
+				sentDatagrams.incrementAndGet();
+			} else {
+				droppedDatagrams.incrementAndGet();
+				LOG.debug("Socket send buffer is full, dropped a datagram of {} bytes", datagram.remaining());
+			}
+		} catch (PortUnreachableException e) {
+			// reported for an earlier datagram, nobody was listening when it arrived
+			droppedDatagrams.incrementAndGet();
+			LOG.debug("UDP listener is not reachable", e);
+		} finally {
+			((Buffer) datagram).clear();
+		}
+	}
+}
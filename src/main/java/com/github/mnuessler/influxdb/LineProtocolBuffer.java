@@ -0,0 +1,421 @@
+package com.github.mnuessler.influxdb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Growable buffer holding UTF-8 encoded line protocol in a list of heap or direct {@link ByteBuffer} segments. Up to the segment size a
+ * buffer grows by reallocating its first segment, beyond that by adding segments, so a large payload never needs one large contiguous
+ * array. The buffer is meant to be reused: {@link #clear()} keeps the allocated segments, or returns them to the {@link SegmentPool} the
+ * buffer was created with. Instances are not thread-safe.
+ */
+public final class LineProtocolBuffer {
+
+	private static final int COPY_CHUNK_SIZE = 8192;
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final boolean direct;
+
+	private final SegmentPool pool;
+
+	private final int segmentShift;
+
+	private final int segmentMask;
+
+	// offset of the content in the first segment, only a slice does not start at the beginning of a segment
+	private final int start;
+
+	// segments in use followed by spare ones, all but the last one in use are full
+	private ByteBuffer[] segments;
+
+	private int count;
+
+	private ByteBuffer current = EMPTY;
+
+	private byte[] digits;
+
+	/**
+	 * Creates a heap buffer holding the given UTF-8 encoded line protocol without copying it.
+	 */
+	public static LineProtocolBuffer wrap(@Nonnull final byte[] payload) {
+		return new LineProtocolBuffer(ByteBuffer.wrap(payload));
+	}
+
+	private LineProtocolBuffer(ByteBuffer content) {
+		this.direct = content.isDirect();
+		this.pool = null;
+		this.segmentShift = Integer.numberOfTrailingZeros(segmentSize(content.capacity()));
+		this.segmentMask = (1 << segmentShift) - 1;
+		this.start = 0;
+		this.segments = new ByteBuffer[] { content };
+		this.count = 1;
+		this.current = content;
+		((Buffer) content).position(content.limit());
+	}
+
+	private LineProtocolBuffer(LineProtocolBuffer source, int offset, int length) {
+		this.direct = source.direct;
+		this.pool = null;
+		this.segmentShift = source.segmentShift;
+		this.segmentMask = source.segmentMask;
+		this.start = offset & segmentMask;
+		int first = offset >>> segmentShift;
+		this.count = ((offset + length - 1) >>> segmentShift) - first + 1;
+		this.segments = new ByteBuffer[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = source.segments[first + i].duplicate();
+		}
+		this.current = segments[count - 1];
+		((Buffer) current).position(((offset + length - 1) & segmentMask) + 1);
+	}
+
+	public LineProtocolBuffer(final int initialCapacity) {
+		this(initialCapacity, false);
+	}
+
+	public LineProtocolBuffer(final int initialCapacity, final boolean direct) {
+		if (initialCapacity < 1) {
+			throw new IllegalArgumentException("Initial capacity must be positive: " + initialCapacity);
+		}
+		this.direct = direct;
+		this.pool = null;
+		this.segmentShift = Integer.numberOfTrailingZeros(SegmentPool.DEFAULT_SEGMENT_SIZE);
+		this.segmentMask = SegmentPool.DEFAULT_SEGMENT_SIZE - 1;
+		this.start = 0;
+		this.segments = new ByteBuffer[] { allocate(Math.min(initialCapacity, SegmentPool.DEFAULT_SEGMENT_SIZE)) };
+		this.count = 1;
+		this.current = segments[0];
+	}
+
+	/**
+	 * Creates an empty buffer taking its segments from the given pool when needed and returning them when cleared.
+	 */
+	public LineProtocolBuffer(@Nonnull final SegmentPool pool) {
+		this.direct = pool.isDirect();
+		this.pool = pool;
+		this.segmentShift = Integer.numberOfTrailingZeros(pool.getSegmentSize());
+		this.segmentMask = pool.getSegmentSize() - 1;
+		this.start = 0;
+		this.segments = new ByteBuffer[4];
+	}
+
+	private static int segmentSize(int capacity) {
+		return Math.max(SegmentPool.DEFAULT_SEGMENT_SIZE, Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1);
+	}
+
+	public int length() {
+		return count == 0 ? 0 : ((count - 1) << segmentShift) + current.position() - start;
+	}
+
+	/**
+	 * Total size of the segments held by this buffer.
+	 */
+	public int capacity() {
+		int capacity = 0;
+		for (ByteBuffer segment : segments) {
+			if (segment != null) {
+				capacity += segment.capacity();
+			}
+		}
+		return capacity;
+	}
+
+	public boolean isDirect() {
+		return direct;
+	}
+
+	public void clear() {
+		if (pool != null) {
+			for (int i = 0; i < segments.length && segments[i] != null; i++) {
+				pool.release(segments[i]);
+				segments[i] = null;
+			}
+			count = 0;
+			current = EMPTY;
+			return;
+		}
+		// Buffer casts keep the byte code compatible with Java 7/8, where ByteBuffer lacks the covariant overrides
+		for (int i = 0; i < count; i++) {
+			((Buffer) segments[i]).clear();
+		}
+		count = 1;
+		current = segments[0];
+		((Buffer) current).position(start);
+	}
+
+	void truncate(final int length) {
+		if (length >= length()) {
+			return;
+		}
+		int end = start + length;
+		int segment = end >>> segmentShift;
+		for (int i = segment + 1; i < count; i++) {
+			((Buffer) segments[i]).clear();
+		}
+		count = segment + 1;
+		current = segments[segment];
+		((Buffer) current).position(end & segmentMask);
+	}
+
+	/**
+	 * Returns a read-only view of the content. The view shares the content with this buffer and becomes invalid as soon as the buffer is
+	 * modified. A content spanning several segments is copied into a new buffer, see {@link #writeTo(OutputStream)} for a way to send
+	 * the content without copying it.
+	 */
+	public ByteBuffer asReadOnlyByteBuffer() {
+		if (count > 1) {
+			return ByteBuffer.wrap(toByteArray()).asReadOnlyBuffer();
+		}
+		ByteBuffer view = current.asReadOnlyBuffer();
+		((Buffer) view).flip().position(start);
+		return view;
+	}
+
+	public void writeTo(@Nonnull final OutputStream out) throws IOException {
+		writeTo(out, 0, length());
+	}
+
+	/**
+	 * Writes the given range of the content segment by segment, straight from the backing arrays of heap segments.
+	 */
+	public void writeTo(@Nonnull final OutputStream out, final int offset, final int length) throws IOException {
+		byte[] chunk = null;
+		int position = start + offset;
+		int end = position + length;
+		while (position < end) {
+			ByteBuffer segment = segments[position >>> segmentShift];
+			int from = position & segmentMask;
+			int size = Math.min(end - position, segment.capacity() - from);
+			if (segment.hasArray()) {
+				out.write(segment.array(), segment.arrayOffset() + from, size);
+			} else {
+				if (chunk == null) {
+					chunk = new byte[Math.min(length, COPY_CHUNK_SIZE)];
+				}
+				ByteBuffer view = segment.duplicate();
+				((Buffer) view).limit(from + size).position(from);
+				while (view.hasRemaining()) {
+					int copied = Math.min(view.remaining(), chunk.length);
+					view.get(chunk, 0, copied);
+					out.write(chunk, 0, copied);
+				}
+			}
+			position += size;
+		}
+	}
+
+	/**
+	 * Returns a buffer sharing the given range of this buffer's content, e.g. to send a part of a payload without copying it, also if
+	 * the range spans several segments. Like {@link #asReadOnlyByteBuffer()}, the slice becomes invalid as soon as this buffer is
+	 * modified. The slice itself must not be modified either.
+	 */
+	LineProtocolBuffer slice(final int offset, final int length) {
+		if (length == 0) {
+			return wrap(new byte[0]);
+		}
+		return new LineProtocolBuffer(this, start + offset, length);
+	}
+
+	/**
+	 * Returns the index of the first occurrence of the given byte at or after {@code fromIndex}, or {@code -1}.
+	 */
+	int indexOf(final byte value, final int fromIndex) {
+		int length = start + length();
+		int index = start + fromIndex;
+		while (index < length) {
+			ByteBuffer segment = segments[index >>> segmentShift];
+			int end = Math.min(segment.capacity(), (index & segmentMask) + length - index);
+			for (int i = index & segmentMask; i < end; i++, index++) {
+				if (segment.get(i) == value) {
+					return index - start;
+				}
+			}
+		}
+		return -1;
+	}
+
+	public byte[] toByteArray() {
+		return toByteArray(0, length());
+	}
+
+	byte[] toByteArray(final int offset, final int length) {
+		byte[] bytes = new byte[length];
+		ByteBuffer target = ByteBuffer.wrap(bytes);
+		copyTo(offset, length, target);
+		return bytes;
+	}
+
+	/**
+	 * Copies the given range of the content into the target buffer.
+	 */
+	void copyTo(final int offset, final int length, @Nonnull final ByteBuffer target) {
+		int position = start + offset;
+		int end = position + length;
+		while (position < end) {
+			ByteBuffer view = segments[position >>> segmentShift].duplicate();
+			int from = position & segmentMask;
+			int size = Math.min(end - position, view.capacity() - from);
+			((Buffer) view).limit(from + size).position(from);
+			target.put(view);
+			position += size;
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (count == 1 && current.hasArray()) {
+			return new String(current.array(), current.arrayOffset() + start, current.position() - start, InfluxDbClient.CHARSET);
+		}
+		return new String(toByteArray(), InfluxDbClient.CHARSET);
+	}
+
+	LineProtocolBuffer append(final char c) {
+		if (c < 0x80) {
+			put((byte) c);
+			return this;
+		}
+		return appendCodePoint(c);
+	}
+
+	LineProtocolBuffer append(@Nonnull final CharSequence value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+				appendCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+			} else {
+				append(c);
+			}
+		}
+		return this;
+	}
+
+	LineProtocolBuffer append(@Nonnull final byte[] bytes) {
+		put(bytes, 0, bytes.length);
+		return this;
+	}
+
+	/**
+	 * Appends the content of another buffer, e.g. points encoded by another thread.
+	 */
+	public LineProtocolBuffer append(@Nonnull final LineProtocolBuffer other) {
+		for (int i = 0; i < other.count; i++) {
+			ByteBuffer view = other.segments[i].duplicate();
+			((Buffer) view).flip().position(i == 0 ? other.start : 0);
+			put(view);
+		}
+		return this;
+	}
+
+	LineProtocolBuffer append(final boolean value) {
+		return append(value ? "true" : "false");
+	}
+
+	LineProtocolBuffer append(final long value) {
+		if (value == Long.MIN_VALUE) {
+			return append("-9223372036854775808");
+		}
+		if (digits == null) {
+			digits = new byte[20];
+		}
+		long remaining = Math.abs(value);
+		int start = digits.length;
+		do {
+			digits[--start] = (byte) ('0' + remaining % 10);
+			remaining /= 10;
+		} while (remaining > 0);
+		if (value < 0) {
+			digits[--start] = '-';
+		}
+		put(digits, start, digits.length - start);
+		return this;
+	}
+
+	/**
+	 * Appends the UTF-8 encoding of the given code point. Unpaired surrogates are replaced with {@code '?'}, like
+	 * {@link String#getBytes(java.nio.charset.Charset)} does.
+	 */
+	LineProtocolBuffer appendCodePoint(final int codePoint) {
+		if (codePoint < 0x80) {
+			put((byte) codePoint);
+		} else if (codePoint < 0x800) {
+			put((byte) (0xC0 | (codePoint >> 6)));
+			put((byte) (0x80 | (codePoint & 0x3F)));
+		} else if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+			put((byte) '?');
+		} else if (codePoint < 0x10000) {
+			put((byte) (0xE0 | (codePoint >> 12)));
+			put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+			put((byte) (0x80 | (codePoint & 0x3F)));
+		} else {
+			put((byte) (0xF0 | (codePoint >> 18)));
+			put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+			put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+			put((byte) (0x80 | (codePoint & 0x3F)));
+		}
+		return this;
+	}
+
+	private void put(byte value) {
+		if (!current.hasRemaining()) {
+			nextSegment();
+		}
+		current.put(value);
+	}
+
+	private void put(byte[] bytes, int offset, int length) {
+		while (length > 0) {
+			if (!current.hasRemaining()) {
+				nextSegment();
+			}
+			int size = Math.min(length, current.remaining());
+			current.put(bytes, offset, size);
+			offset += size;
+			length -= size;
+		}
+	}
+
+	private void put(ByteBuffer source) {
+		int limit = source.limit();
+		while (source.hasRemaining()) {
+			if (!current.hasRemaining()) {
+				nextSegment();
+			}
+			((Buffer) source).limit(source.position() + Math.min(source.remaining(), current.remaining()));
+			current.put(source);
+			((Buffer) source).limit(limit);
+		}
+	}
+
+	/**
+	 * Makes room for more content once the current segment is full: grows a first segment smaller than the segment size, or continues
+	 * with a spare or a new segment.
+	 */
+	private void nextSegment() {
+		int segmentSize = segmentMask + 1;
+		if (count == 1 && current.capacity() < segmentSize) {
+			ByteBuffer grown = allocate(Math.min(Math.max(current.capacity() * 2, 16), segmentSize));
+			((Buffer) current).flip();
+			grown.put(current);
+			segments[0] = grown;
+			current = grown;
+			return;
+		}
+		if (count == segments.length) {
+			segments = Arrays.copyOf(segments, segments.length * 2);
+		}
+		if (segments[count] == null) {
+			segments[count] = pool != null ? pool.acquire() : allocate(segmentSize);
+		}
+		current = segments[count++];
+	}
+
+	private ByteBuffer allocate(int capacity) {
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+}
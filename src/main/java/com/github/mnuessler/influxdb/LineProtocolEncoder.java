@@ -2,19 +2,51 @@ package com.github.mnuessler.influxdb;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.text.NumberFormat;
-import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Encodes points in InfluxDB line protocol. Instances are not thread-safe.
+ */
 public class LineProtocolEncoder {
 
 	private static final Logger LOG = LoggerFactory.getLogger(LineProtocolEncoder.class);
 
+	private final SeriesKeyCache seriesKeyCache;
+
+	private final Precision precision;
+
+	private final PointWriter pointWriter = new PointWriter();
+
+	private LineProtocolBuffer scratchBuffer;
+
+	public LineProtocolEncoder() {
+		this(null);
+	}
+
+	public LineProtocolEncoder(@Nullable final SeriesKeyCache seriesKeyCache) {
+		this(seriesKeyCache, Precision.MILLISECONDS);
+	}
+
+	/**
+	 * @param precision precision of the timestamps passed to {@link PointWriter#end(long, TimeUnit)}, has to match the precision the
+	 *            payload is written with
+	 */
+	public LineProtocolEncoder(@Nullable final SeriesKeyCache seriesKeyCache, @Nonnull final Precision precision) {
+		this.seriesKeyCache = seriesKeyCache;
+		this.precision = precision;
+	}
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
 	public String encode(@Nonnull final String measurement, @Nonnull final Map<String, ?> fields, @Nonnull final Map<String, String> tags,
 			final long timestamp) {
 		StringBuilder buffer = new StringBuilder();
@@ -24,124 +56,277 @@ public class LineProtocolEncoder {
 
 	public void encodeInto(@Nonnull final StringBuilder buffer, @Nonnull final String measurement, @Nonnull final Map<String, ?> fields,
 			@Nonnull final Map<String, String> tags, final long timestamp) {
-		if (fields.isEmpty()) {
-			LOG.debug("Skipping measurement '{}' because no field given", measurement);
-			return;
+		if (scratchBuffer == null) {
+			scratchBuffer = new LineProtocolBuffer(256);
 		}
-		if (containsInvalidValue(fields)) {
-			LOG.debug("Skipping measurement '{}' because of an invalid field value. Fields: {}", measurement, fields);
-			return;
+		scratchBuffer.clear();
+		encodeInto(scratchBuffer, measurement, fields, tags, timestamp);
+		buffer.append(scratchBuffer.toString());
+	}
+
+	public void encodeInto(@Nonnull final LineProtocolBuffer buffer, @Nonnull final String measurement,
+			@Nonnull final Map<String, ?> fields, @Nonnull final Map<String, String> tags, final long timestamp) {
+		PointWriter point = beginPoint(buffer, measurement, tags);
+		for (Map.Entry<String, ?> entry : fields.entrySet()) {
+			point.field(entry.getKey(), entry.getValue());
 		}
+		point.end(timestamp);
+	}
 
-		appendEscapedMeasurement(buffer, measurement);
+	/**
+	 * Starts a new point in the given buffer. The returned writer is owned by this encoder and reused for every point, so a point has to
+	 * be completed with {@link PointWriter#end(long)} before the next one is started.
+	 */
+	public PointWriter beginPoint(@Nonnull final LineProtocolBuffer buffer, @Nonnull final String measurement,
+			@Nonnull final Map<String, String> tags) {
+		return pointWriter.begin(buffer, measurement, measurement, tags);
+	}
 
-		// tags are optional
-		if (!tags.isEmpty()) {
-			buffer.append(',');
-			for (Map.Entry<String, String> entry : tags.entrySet()) {
-				appendEscapedKey(buffer, entry.getKey());
-				buffer.append('=');
-				appendEscapedKey(buffer, entry.getValue());
-				buffer.append(',');
+	/**
+	 * Like {@link #beginPoint(LineProtocolBuffer, String, Map)}, but caches the series key under the given series name instead of the
+	 * measurement, for measurements shared by several series, e.g. metrics whose names were split into measurement and tags.
+	 */
+	public PointWriter beginPoint(@Nonnull final LineProtocolBuffer buffer, @Nonnull final String seriesName,
+			@Nonnull final String measurement, @Nonnull final Map<String, String> tags) {
+		return pointWriter.begin(buffer, seriesName, measurement, tags);
+	}
+
+	/**
+	 * Like {@link #beginPoint(LineProtocolBuffer, String, Map)}, but with a series key the caller encoded beforehand with
+	 * {@link #encodeSeriesKey(String, Map)}. The measurement is only used for logging.
+	 */
+	public PointWriter beginPoint(@Nonnull final LineProtocolBuffer buffer, @Nonnull final byte[] seriesKey,
+			@Nonnull final String measurement) {
+		return pointWriter.begin(buffer, seriesKey, measurement);
+	}
+
+	/**
+	 * Returns the escaped, UTF-8 encoded series key ({@code measurement,tag1=v1,...}) of the measurement and tags.
+	 */
+	public byte[] encodeSeriesKey(@Nonnull final String measurement, @Nonnull final Map<String, String> tags) {
+		if (scratchBuffer == null) {
+			scratchBuffer = new LineProtocolBuffer(256);
+		}
+		scratchBuffer.clear();
+		appendEscapedSeriesKey(scratchBuffer, measurement, tags);
+		return scratchBuffer.toByteArray();
+	}
+
+	/**
+	 * Writes the fields of a single point straight into the output buffer. If a field value cannot be represented in line protocol (NaN,
+	 * infinity or an unsupported type) or no field was written at all, the whole point is discarded when it is ended.
+	 */
+	public final class PointWriter {
+
+		private LineProtocolBuffer buffer;
+
+		private String measurement;
+
+		private int start;
+
+		private int fieldCount;
+
+		private boolean invalid;
+
+		private PointWriter() {
+		}
+
+		private PointWriter begin(LineProtocolBuffer buffer, String seriesName, String measurement, Map<String, String> tags) {
+			reset(buffer, measurement);
+			appendSeriesKey(buffer, seriesName, measurement, tags);
+			buffer.append(' ');
+			return this;
+		}
+
+		private PointWriter begin(LineProtocolBuffer buffer, byte[] seriesKey, String measurement) {
+			reset(buffer, measurement);
+			buffer.append(seriesKey).append(' ');
+			return this;
+		}
+
+		private void reset(LineProtocolBuffer buffer, String measurement) {
+			this.buffer = buffer;
+			this.measurement = measurement;
+			this.start = buffer.length();
+			this.fieldCount = 0;
+			this.invalid = false;
+		}
+
+		public PointWriter field(@Nonnull final String name, final double value) {
+			if (Double.isNaN(value) || Double.isInfinite(value)) {
+				return invalidField(name, value);
+			}
+			if (appendFieldName(name)) {
+				DoubleFormat.appendDouble(buffer, value);
 			}
-			buffer.deleteCharAt(buffer.length() - 1);
+			return this;
 		}
-		buffer.append(' ');
 
-		// fields
-        NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
-        for (Map.Entry<String, ?> entry : fields.entrySet()) {
-			String fieldName = entry.getKey();
-			Object fieldValue = entry.getValue();
-			appendEscapedKey(buffer, fieldName);
-			buffer.append('=');
+		public PointWriter field(@Nonnull final String name, final float value) {
+			if (Float.isNaN(value) || Float.isInfinite(value)) {
+				return invalidField(name, value);
+			}
+			if (appendFieldName(name)) {
+				DoubleFormat.appendFloat(buffer, value);
+			}
+			return this;
+		}
 
-			if (isFloatingPointNumber(fieldValue)) {
-				buffer.append(nf.format(fieldValue));
-			} else if (isIntegerNumber(fieldValue)) {
-				buffer.append(fieldValue).append('i');
-			} else if (isBoolean(fieldValue)) {
-				// 'TRUE', 'FALSE', 'true', 'false', 't', 'f' are all valid for booleans
-				//buffer.append((Boolean) fieldValue ? 't' : 'f');
-                buffer.append(fieldValue);
-			} else if (isString(fieldValue)) {
-				appendEscapeFieldStringValue(buffer, fieldValue.toString());
+		public PointWriter field(@Nonnull final String name, final long value) {
+			if (appendFieldName(name)) {
+				buffer.append(value).append('i');
 			}
+			return this;
+		}
 
-			buffer.append(',');
+		public PointWriter field(@Nonnull final String name, final boolean value) {
+			if (appendFieldName(name)) {
+				// 'TRUE', 'FALSE', 'true', 'false', 't', 'f' are all valid for booleans
+				buffer.append(value);
+			}
+			return this;
 		}
-		buffer.deleteCharAt(buffer.length() - 1);
 
-		// time
-		buffer.append(' ');
-		buffer.append(timestamp);
-		buffer.append('\n');
-	}
+		public PointWriter field(@Nonnull final String name, @Nonnull final CharSequence value) {
+			if (appendFieldName(name)) {
+				appendEscapeFieldStringValue(buffer, value);
+			}
+			return this;
+		}
 
-	private static void appendEscapedMeasurement(StringBuilder buffer, String measurement) {
-		for (char c : measurement.toCharArray()) {
-			if (c == ',' || c == ' ') {
-				buffer.append('\\');
+		public PointWriter field(@Nonnull final String name, @Nullable final Object value) {
+			if (value instanceof Double) {
+				return field(name, ((Double) value).doubleValue());
+			} else if (value instanceof Float) {
+				return field(name, ((Float) value).floatValue());
+			} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+				return field(name, ((Number) value).longValue());
+			} else if (value instanceof BigDecimal) {
+				if (appendFieldName(name)) {
+					DoubleFormat.appendBigDecimal(buffer, (BigDecimal) value);
+				}
+				return this;
+			} else if (value instanceof BigInteger) {
+				if (appendFieldName(name)) {
+					buffer.append(value.toString()).append('i');
+				}
+				return this;
+			} else if (value instanceof Boolean) {
+				return field(name, ((Boolean) value).booleanValue());
+			} else if (value instanceof CharSequence) {
+				return field(name, (CharSequence) value);
 			}
-			buffer.append(c);
+			return invalidField(name, value);
 		}
-	}
 
-	private static void appendEscapeFieldStringValue(StringBuilder buffer, String value) {
-		buffer.append('"');
-		for (char c : value.toCharArray()) {
-			if (c == '"') {
-				buffer.append('\\');
+		/**
+		 * Completes the point with the given timestamp, converted to the precision of the encoder.
+		 *
+		 * @return {@code false} if the point was discarded
+		 */
+		public boolean end(final long timestamp, @Nonnull final TimeUnit unit) {
+			return end(precision.convert(timestamp, unit));
+		}
+
+		/**
+		 * Completes the point with the given timestamp, which is written as is.
+		 *
+		 * @return {@code false} if the point was discarded
+		 */
+		public boolean end(final long timestamp) {
+			if (invalid || fieldCount == 0) {
+				if (fieldCount == 0 && !invalid) {
+					LOG.debug("Skipping measurement '{}' because no field given", measurement);
+				}
+				buffer.truncate(start);
+				buffer = null;
+				return false;
 			}
-			buffer.append(c);
+			buffer.append(' ').append(timestamp).append('\n');
+			buffer = null;
+			return true;
 		}
-		buffer.append('"');
-	}
 
-	private static void appendEscapedKey(StringBuilder buffer, String value) {
-		for (char c : value.toCharArray()) {
-			if (c == ',' || c == '=' || c == ' ') {
-				buffer.append('\\');
+		private boolean appendFieldName(String name) {
+			if (invalid) {
+				return false;
+			}
+			if (fieldCount++ > 0) {
+				buffer.append(',');
 			}
-			buffer.append(c);
+			appendEscapedKey(buffer, name);
+			buffer.append('=');
+			return true;
 		}
-	}
 
-	private static boolean containsInvalidValue(Map<String, ?> fields) {
-		for (Map.Entry<String, ?> entry : fields.entrySet()) {
-			Object value = entry.getValue();
-			if (!isSupportedType(value) || isInvalidNumber(value)) {
-				return true;
+		private PointWriter invalidField(String name, Object value) {
+			if (!invalid && LOG.isDebugEnabled()) {
+				LOG.debug("Skipping measurement '{}' because of an invalid value for field '{}': {}", measurement, name, value);
 			}
+			invalid = true;
+			return this;
 		}
-		return false;
 	}
 
-	private static boolean isIntegerNumber(Object fieldValue) {
-		return (fieldValue instanceof Integer) || (fieldValue instanceof Long || (fieldValue instanceof BigInteger));
+	private void appendSeriesKey(LineProtocolBuffer buffer, String seriesName, String measurement, Map<String, String> tags) {
+		if (seriesKeyCache == null) {
+			appendEscapedSeriesKey(buffer, measurement, tags);
+			return;
+		}
+		byte[] seriesKey = seriesKeyCache.get(seriesName, tags);
+		if (seriesKey != null) {
+			buffer.append(seriesKey);
+			return;
+		}
+		int start = buffer.length();
+		appendEscapedSeriesKey(buffer, measurement, tags);
+		seriesKeyCache.put(seriesName, tags, buffer.toByteArray(start, buffer.length() - start));
 	}
 
-	private static boolean isFloatingPointNumber(Object fieldValue) {
-		return (fieldValue instanceof Double) || (fieldValue instanceof Float) || (fieldValue instanceof BigDecimal);
-	}
+	private static void appendEscapedSeriesKey(LineProtocolBuffer buffer, String measurement, Map<String, String> tags) {
+		appendEscapedMeasurement(buffer, measurement);
 
-	private static boolean isBoolean(Object fieldValue) {
-		return (fieldValue instanceof Boolean);
+		// tags are optional
+		for (Map.Entry<String, String> entry : tags.entrySet()) {
+			buffer.append(',');
+			appendEscapedKey(buffer, entry.getKey());
+			buffer.append('=');
+			appendEscapedKey(buffer, entry.getValue());
+		}
 	}
 
-	private static boolean isString(Object fieldValue) {
-		return (fieldValue instanceof CharSequence);
+	private static void appendEscapedMeasurement(LineProtocolBuffer buffer, String measurement) {
+		for (int i = 0; i < measurement.length(); ) {
+			int c = Character.codePointAt(measurement, i);
+			if (c == ',' || c == ' ') {
+				buffer.append('\\');
+			}
+			buffer.appendCodePoint(c);
+			i += Character.charCount(c);
+		}
 	}
 
-	private static boolean isSupportedType(Object fieldValue) {
-		return isFloatingPointNumber(fieldValue) || isIntegerNumber(fieldValue) || isBoolean(fieldValue) || isString(fieldValue);
+	private static void appendEscapeFieldStringValue(LineProtocolBuffer buffer, CharSequence value) {
+		buffer.append('"');
+		for (int i = 0; i < value.length(); ) {
+			int c = Character.codePointAt(value, i);
+			if (c == '"') {
+				buffer.append('\\');
+			}
+			buffer.appendCodePoint(c);
+			i += Character.charCount(c);
+		}
+		buffer.append('"');
 	}
 
-	private static boolean isInvalidNumber(Object fieldValue) {
-		if (fieldValue instanceof Double) {
-			Double d = (Double) fieldValue;
-			return d.isNaN() || d.isInfinite();
+	private static void appendEscapedKey(LineProtocolBuffer buffer, String value) {
+		for (int i = 0; i < value.length(); ) {
+			int c = Character.codePointAt(value, i);
+			if (c == ',' || c == '=' || c == ' ') {
+				buffer.append('\\');
+			}
+			buffer.appendCodePoint(c);
+			i += Character.charCount(c);
 		}
-		return false;
 	}
 }
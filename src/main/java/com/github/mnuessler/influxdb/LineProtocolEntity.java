@@ -0,0 +1,51 @@
+package com.github.mnuessler.influxdb;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.Nonnull;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Request entity writing the content of a {@link LineProtocolBuffer} straight to the connection, without copying it into an intermediate
+ * byte array first.
+ */
+class LineProtocolEntity extends AbstractHttpEntity {
+
+	private final LineProtocolBuffer payload;
+
+	LineProtocolEntity(@Nonnull final LineProtocolBuffer payload, @Nonnull final ContentType contentType) {
+		this.payload = payload;
+		setContentType(contentType.toString());
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return payload.length();
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		return new ByteArrayInputStream(payload.toByteArray());
+	}
+
+	@Override
+	public void writeTo(final OutputStream out) throws IOException {
+		payload.writeTo(out);
+		out.flush();
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+}
@@ -1,16 +1,42 @@
 package com.github.mnuessler.influxdb;
 
-enum Precision {
+import java.util.concurrent.TimeUnit;
 
-	NANOSECONDS("n"), MICROSECONDS("u"), MILLISECONDS("ms"), SECONDS("s"), MINUTES("m"), HOURS("h");
+import javax.annotation.Nonnull;
+
+/**
+ * Precision of the timestamps written to InfluxDB. Coarser precisions make payloads shorter, and InfluxDB compresses identical
+ * timestamps across series better.
+ */
+public enum Precision {
+
+	NANOSECONDS("n", TimeUnit.NANOSECONDS), MICROSECONDS("u", TimeUnit.MICROSECONDS), MILLISECONDS("ms", TimeUnit.MILLISECONDS),
+	SECONDS("s", TimeUnit.SECONDS), MINUTES("m", TimeUnit.MINUTES), HOURS("h", TimeUnit.HOURS);
 
 	private final String unit;
 
-	Precision(final String unit) {
+	private final TimeUnit timeUnit;
+
+	Precision(final String unit, final TimeUnit timeUnit) {
 		this.unit = unit;
+		this.timeUnit = timeUnit;
 	}
 
-	String getUnit() {
+	/**
+	 * Value of the {@code precision} query parameter of the write endpoint.
+	 */
+	public String getUnit() {
         return unit;
     }
+
+	public TimeUnit getTimeUnit() {
+		return timeUnit;
+	}
+
+	/**
+	 * Converts a timestamp to this precision, truncating it.
+	 */
+	public long convert(final long timestamp, @Nonnull final TimeUnit unit) {
+		return timeUnit.convert(timestamp, unit);
+	}
 }
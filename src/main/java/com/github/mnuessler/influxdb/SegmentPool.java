@@ -0,0 +1,107 @@
+package com.github.mnuessler.influxdb;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Pool of fixed-size segments for {@link LineProtocolBuffer}s that are filled and cleared in cycles, e.g. once per report. Cleared
+ * buffers return their segments to the pool, where they wait for the next cycle. At most the configured number of segments is kept, and
+ * {@link #trim()}, called once per cycle, releases segments that have not been used for the configured number of cycles, so the pool
+ * shrinks again after a cycle with an unusually large payload. Instances are thread-safe.
+ */
+public final class SegmentPool {
+
+	/**
+	 * Small enough not to be a humongous object for G1 with its smallest region size of 1 MiB.
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+	private final int segmentSize;
+
+	private final boolean direct;
+
+	private final int idleCycles;
+
+	private final ByteBuffer[] segments;
+
+	// the cycle each pooled segment was returned in, ascending as segments are taken from and returned to the top
+	private final long[] returned;
+
+	private int size;
+
+	private long cycle;
+
+	/**
+	 * @param segmentSize size of the segments in bytes, a power of two
+	 * @param maxSegments maximum number of segments kept in the pool
+	 * @param idleCycles number of cycles a segment may remain unused before it is released
+	 */
+	public SegmentPool(final int segmentSize, final boolean direct, final int maxSegments, final int idleCycles) {
+		if (segmentSize < 1 || Integer.bitCount(segmentSize) != 1) {
+			throw new IllegalArgumentException("Segment size must be a power of two: " + segmentSize);
+		}
+		if (maxSegments < 0) {
+			throw new IllegalArgumentException("Maximum number of segments must not be negative: " + maxSegments);
+		}
+		if (idleCycles < 1) {
+			throw new IllegalArgumentException("Segments must be kept for at least one cycle: " + idleCycles);
+		}
+		this.segmentSize = segmentSize;
+		this.direct = direct;
+		this.idleCycles = idleCycles;
+		this.segments = new ByteBuffer[maxSegments];
+		this.returned = new long[maxSegments];
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * Number of segments currently waiting in the pool.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Ends a cycle and releases the segments that have not been used for the configured number of cycles.
+	 */
+	public synchronized void trim() {
+		cycle++;
+		int idle = 0;
+		while (idle < size && cycle - 1 - returned[idle] >= idleCycles) {
+			idle++;
+		}
+		if (idle == 0) {
+			return;
+		}
+		System.arraycopy(segments, idle, segments, 0, size - idle);
+		System.arraycopy(returned, idle, returned, 0, size - idle);
+		for (int i = size - idle; i < size; i++) {
+			segments[i] = null;
+		}
+		size -= idle;
+	}
+
+	synchronized ByteBuffer acquire() {
+		if (size == 0) {
+			return direct ? ByteBuffer.allocateDirect(segmentSize) : ByteBuffer.allocate(segmentSize);
+		}
+		ByteBuffer segment = segments[--size];
+		segments[size] = null;
+		((Buffer) segment).clear();
+		return segment;
+	}
+
+	synchronized void release(ByteBuffer segment) {
+		if (size < segments.length) {
+			segments[size] = segment;
+			returned[size++] = cycle;
+		}
+	}
+}
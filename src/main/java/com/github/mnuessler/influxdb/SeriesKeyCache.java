@@ -0,0 +1,65 @@
+package com.github.mnuessler.influxdb;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Bounded cache of escaped, UTF-8 encoded series keys ({@code measurement,tag1=v1,...}), keyed by series name and tag set. The series
+ * name is the measurement, unless the encoder was given a different one. Once the maximum size is reached new series keys are no longer
+ * cached but encoded on every call; entries have to be evicted explicitly, e.g. when the corresponding metric is removed from its
+ * registry.
+ */
+public class SeriesKeyCache {
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final int maximumSize;
+
+	public SeriesKeyCache(final int maximumSize) {
+		if (maximumSize < 0) {
+			throw new IllegalArgumentException("Maximum size must not be negative: " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+	}
+
+	@Nullable
+	byte[] get(@Nonnull final String seriesName, @Nonnull final Map<String, String> tags) {
+		Entry entry = entries.get(seriesName);
+		if (entry == null || (entry.tags != tags && !entry.tags.equals(tags))) {
+			return null;
+		}
+		return entry.seriesKey;
+	}
+
+	void put(@Nonnull final String seriesName, @Nonnull final Map<String, String> tags, @Nonnull final byte[] seriesKey) {
+		if (entries.size() < maximumSize || entries.containsKey(seriesName)) {
+			entries.put(seriesName, new Entry(tags, seriesKey));
+		}
+	}
+
+	public void evict(@Nonnull final String seriesName) {
+		entries.remove(seriesName);
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	private static final class Entry {
+		private final Map<String, String> tags;
+		private final byte[] seriesKey;
+
+		private Entry(Map<String, String> tags, byte[] seriesKey) {
+			this.tags = tags;
+			this.seriesKey = seriesKey;
+		}
+	}
+}
@@ -0,0 +1,309 @@
+package com.github.mnuessler.influxdb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decorator keeping payloads that could not be written in memory-mapped segment files on local disk, and replaying them in order once
+ * writes succeed again. Spilled payloads survive restarts of the JVM. Spilling happens on a background thread fed by a bounded queue, so
+ * a failed write only costs the caller a copy of the payload, and replaying on another one, so spilling never waits for the network.
+ * Payloads rejected by the server as invalid (4xx) are not spilled, and a spilled payload that still cannot be replayed after a number
+ * of attempts is dropped. If the delegate is a {@link BatchingInfluxDbClient}, only the batches that failed are spilled.
+ */
+public class SpillingInfluxDbClient implements InfluxDbClient, Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SpillingInfluxDbClient.class);
+
+	public static Builder wrap(@Nonnull final InfluxDbClient delegate, @Nonnull final Path directory) {
+		return new Builder(delegate, directory);
+	}
+
+	public static class Builder {
+		private final InfluxDbClient delegate;
+
+		private final Path directory;
+
+		private int segmentSize = 16 * 1024 * 1024;
+
+		private long maxDiskUsage = 256L * 1024 * 1024;
+
+		private int replayRate = 5;
+
+		private int maxQueuedSpills = 16;
+
+		private int maxReplayAttempts = 10;
+
+		private Builder(@Nonnull InfluxDbClient delegate, @Nonnull Path directory) {
+			this.delegate = delegate;
+			this.directory = directory;
+		}
+
+		public Builder withSegmentSize(int segmentSize) {
+			if (segmentSize < 1) {
+				throw new IllegalArgumentException("Segment size must be positive: " + segmentSize);
+			}
+			this.segmentSize = segmentSize;
+			return this;
+		}
+
+		/**
+		 * Maximum size of all segment files. The oldest segments are dropped when the limit would be exceeded.
+		 */
+		public Builder withMaxDiskUsage(long maxDiskUsage) {
+			this.maxDiskUsage = maxDiskUsage;
+			return this;
+		}
+
+		/**
+		 * Maximum number of spilled payloads replayed per second.
+		 */
+		public Builder withReplayRate(int payloadsPerSecond) {
+			if (payloadsPerSecond < 1) {
+				throw new IllegalArgumentException("Replay rate must be positive: " + payloadsPerSecond);
+			}
+			this.replayRate = payloadsPerSecond;
+			return this;
+		}
+
+		/**
+		 * Maximum number of failed payloads waiting in memory to be spilled, defaults to 16. Further payloads are dropped.
+		 */
+		public Builder withMaxQueuedSpills(int maxQueuedSpills) {
+			if (maxQueuedSpills < 1) {
+				throw new IllegalArgumentException("Maximum number of queued spills must be positive: " + maxQueuedSpills);
+			}
+			this.maxQueuedSpills = maxQueuedSpills;
+			return this;
+		}
+
+		/**
+		 * Number of failed replays after which a spilled payload is dropped, defaults to 10. Replays are paused while writes fail, so
+		 * only payloads failing while others succeed use up their attempts.
+		 */
+		public Builder withMaxReplayAttempts(int maxReplayAttempts) {
+			if (maxReplayAttempts < 1) {
+				throw new IllegalArgumentException("Maximum number of replay attempts must be positive: " + maxReplayAttempts);
+			}
+			this.maxReplayAttempts = maxReplayAttempts;
+			return this;
+		}
+
+		public SpillingInfluxDbClient build() throws IOException {
+			DiskSpillBuffer spillBuffer = new DiskSpillBuffer(directory, segmentSize, maxDiskUsage);
+			return new SpillingInfluxDbClient(delegate, spillBuffer, replayRate, maxQueuedSpills, maxReplayAttempts);
+		}
+	}
+
+	private final InfluxDbClient delegate;
+
+	// guarded by itself, but never locked during a write to the delegate
+	private final DiskSpillBuffer spillBuffer;
+
+	private final ExecutorService spillExecutor;
+
+	private final ScheduledExecutorService replayExecutor;
+
+	private final int maxReplayAttempts;
+
+	private volatile boolean lastWriteSucceeded = true;
+
+	// failed replays of the oldest spilled payload, only accessed by the replay thread
+	private int replayAttempts;
+
+	private SpillingInfluxDbClient(InfluxDbClient delegate, DiskSpillBuffer spillBuffer, int replayRate, int maxQueuedSpills,
+			int maxReplayAttempts) {
+		this.delegate = delegate;
+		this.spillBuffer = spillBuffer;
+		this.maxReplayAttempts = maxReplayAttempts;
+		this.spillExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(maxQueuedSpills),
+				new SpillThreadFactory("influxdb-spill"));
+		this.replayExecutor = Executors.newSingleThreadScheduledExecutor(new SpillThreadFactory("influxdb-replay"));
+		long replayIntervalMicros = TimeUnit.SECONDS.toMicros(1) / replayRate;
+		replayExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				replay();
+			}
+		}, replayIntervalMicros, replayIntervalMicros, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public void write(@Nonnull CharSequence payload, @Nonnull String database, @Nullable String retentionPolicy) throws IOException {
+		write(LineProtocolBuffer.wrap(payload.toString().getBytes(CHARSET)), database, retentionPolicy);
+	}
+
+	/**
+	 * Writes the payload, or spills it if the write fails for any other reason than the server rejecting it. Rejections are thrown, also
+	 * if only some batches of a {@link BatchingInfluxDbClient} were rejected and the others were written or spilled.
+	 */
+	@Override
+	public void write(@Nonnull LineProtocolBuffer payload, @Nonnull String database, @Nullable String retentionPolicy)
+			throws IOException {
+		try {
+			delegate.write(payload, database, retentionPolicy);
+			lastWriteSucceeded = true;
+		} catch (BatchingInfluxDbClient.PartialWriteException e) {
+			// replaying the whole payload would write the batches that were written already a second time
+			if (spillFailedBatches(e, database, retentionPolicy)) {
+				throw e;
+			}
+		} catch (IOException | RuntimeException e) {
+			if (isRejected(e)) {
+				throw e;
+			}
+			lastWriteSucceeded = false;
+			LOG.info("Failed to send metrics to InfluxDB, spilling {} bytes to disk", payload.length(), e);
+			spill(payload.toByteArray(), database, retentionPolicy);
+		}
+	}
+
+	@Override
+	public void close() {
+		replayExecutor.shutdown();
+		spillExecutor.shutdown();
+		try {
+			replayExecutor.awaitTermination(10, TimeUnit.SECONDS);
+			spillExecutor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Spills the failed batches that were not rejected and returns whether any were rejected.
+	 */
+	private boolean spillFailedBatches(BatchingInfluxDbClient.PartialWriteException e, String database, String retentionPolicy) {
+		List<LineProtocolBuffer> failedBatches = e.getFailedBatches();
+		boolean rejected = false;
+		for (int i = 0; i < failedBatches.size(); i++) {
+			if (isRejected(e.getFailures().get(i))) {
+				rejected = true;
+			} else {
+				lastWriteSucceeded = false;
+				LOG.info("Failed to send a batch to InfluxDB, spilling {} bytes to disk", failedBatches.get(i).length(),
+						e.getFailures().get(i));
+				spill(failedBatches.get(i).toByteArray(), database, retentionPolicy);
+			}
+		}
+		return rejected;
+	}
+
+	private void spill(final byte[] payload, final String database, final String retentionPolicy) {
+		try {
+			spillExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					append(payload, database, retentionPolicy);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			LOG.warn("Spill queue is full or client closed, payload of {} bytes is lost", payload.length);
+		}
+	}
+
+	private void append(byte[] payload, String database, String retentionPolicy) {
+		synchronized (spillBuffer) {
+			try {
+				spillBuffer.append(payload, database, retentionPolicy);
+			} catch (IOException e) {
+				LOG.warn("Failed to spill {} bytes to disk, payload is lost", payload.length, e);
+			}
+		}
+	}
+
+	private void replay() {
+		if (!lastWriteSucceeded) {
+			return;
+		}
+		DiskSpillBuffer.Record record;
+		synchronized (spillBuffer) {
+			record = spillBuffer.peek();
+		}
+		if (record == null) {
+			return;
+		}
+		try {
+			delegate.write(LineProtocolBuffer.wrap(record.payload), record.database, record.retentionPolicy);
+			remove(record);
+		} catch (BatchingInfluxDbClient.PartialWriteException e) {
+			// the failed batches are spilled again on their own, without the ones written already
+			List<LineProtocolBuffer> failedBatches = e.getFailedBatches();
+			for (int i = 0; i < failedBatches.size(); i++) {
+				if (!isRejected(e.getFailures().get(i))) {
+					append(failedBatches.get(i).toByteArray(), record.database, record.retentionPolicy);
+				}
+			}
+			LOG.info("Failed to replay {} batches of a spilled payload", failedBatches.size(), e);
+			remove(record);
+		} catch (IOException | RuntimeException e) {
+			if (isRejected(e)) {
+				LOG.warn("InfluxDB rejected a spilled payload of {} bytes, dropping it", record.payload.length, e);
+				remove(record);
+				return;
+			}
+			if (e instanceof IOException) {
+				// replays resume once a write succeeds again
+				lastWriteSucceeded = false;
+			}
+			if (++replayAttempts < maxReplayAttempts) {
+				LOG.debug("Failed to replay spilled payload", e);
+			} else {
+				LOG.warn("Failed to replay a spilled payload of {} bytes {} times, dropping it", record.payload.length, replayAttempts, e);
+				remove(record);
+			}
+		}
+	}
+
+	private void remove(DiskSpillBuffer.Record record) {
+		replayAttempts = 0;
+		synchronized (spillBuffer) {
+			try {
+				spillBuffer.remove(record);
+			} catch (IOException e) {
+				LOG.warn("Failed to remove spilled payload", e);
+			}
+		}
+	}
+
+	private static boolean isRejected(Exception e) {
+		if (e instanceof HttpResponseException) {
+			int statusCode = ((HttpResponseException) e).getStatusCode();
+			return statusCode >= HttpStatus.SC_BAD_REQUEST && statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR
+					&& statusCode != 429 && statusCode != HttpStatus.SC_REQUEST_TIMEOUT;
+		}
+		return false;
+	}
+
+	private static class SpillThreadFactory implements ThreadFactory {
+		private final String name;
+
+		SpillThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.github.mnuessler.metrics;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Accumulates the values of gauges over the ticks of an aggregation interval, and remembers the count of counters at the end of the
+ * previous interval. Series are identified by a 64 bit hash of their name and kept in an open addressing table of primitive arrays,
+ * about 60 bytes per series, so sampling does not allocate. Series that were not seen in the previous two intervals are dropped when
+ * the table is resized. Instances are not thread-safe.
+ */
+final class Aggregator {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final int intervalTicks;
+
+	private long[] keys = new long[INITIAL_CAPACITY];
+
+	private int[] lastSeen = new int[INITIAL_CAPACITY];
+
+	private int[] samples = new int[INITIAL_CAPACITY];
+
+	private double[] min = new double[INITIAL_CAPACITY];
+
+	private double[] max = new double[INITIAL_CAPACITY];
+
+	private double[] sum = new double[INITIAL_CAPACITY];
+
+	private double[] last = new double[INITIAL_CAPACITY];
+
+	private long[] counts = new long[INITIAL_CAPACITY];
+
+	private int size;
+
+	private int tick;
+
+	// whether the last slot lookup added the series
+	private boolean added;
+
+	/**
+	 * @param intervalTicks number of ticks aggregated into one interval
+	 */
+	Aggregator(int intervalTicks) {
+		if (intervalTicks < 1) {
+			throw new IllegalArgumentException("Interval must be at least one tick: " + intervalTicks);
+		}
+		this.intervalTicks = intervalTicks;
+	}
+
+	/**
+	 * Starts a new tick and returns whether it completes an interval.
+	 */
+	boolean nextTick() {
+		return ++tick % intervalTicks == 0;
+	}
+
+	/**
+	 * Adds a sample of a gauge to the current interval and returns the slot of the gauge.
+	 */
+	int sample(@Nonnull String name, double value) {
+		int slot = slot(name);
+		if (samples[slot] == 0) {
+			min[slot] = value;
+			max[slot] = value;
+			sum[slot] = value;
+		} else {
+			min[slot] = Math.min(min[slot], value);
+			max[slot] = Math.max(max[slot], value);
+			sum[slot] += value;
+		}
+		last[slot] = value;
+		samples[slot]++;
+		return slot;
+	}
+
+	int samples(int slot) {
+		return samples[slot];
+	}
+
+	double min(int slot) {
+		return min[slot];
+	}
+
+	double max(int slot) {
+		return max[slot];
+	}
+
+	double mean(int slot) {
+		return sum[slot] / samples[slot];
+	}
+
+	double last(int slot) {
+		return last[slot];
+	}
+
+	/**
+	 * Starts a new interval for the gauge in the slot, after its aggregate was reported.
+	 */
+	void reset(int slot) {
+		samples[slot] = 0;
+	}
+
+	/**
+	 * Returns how much a counter changed since the end of the previous interval, or the count itself if the counter was not seen before,
+	 * and remembers the count for the next interval.
+	 */
+	long delta(@Nonnull String name, long count) {
+		int slot = slot(name);
+		long delta = added ? count : count - counts[slot];
+		counts[slot] = count;
+		return delta;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		Arrays.fill(keys, 0);
+		size = 0;
+	}
+
+	private int slot(String name) {
+		long key = ChangeTracker.hash(name);
+		int mask = keys.length - 1;
+		int slot = (int) key & mask;
+		added = false;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				lastSeen[slot] = tick;
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (size + 1 > keys.length * 3 / 4) {
+			rehash();
+			return slot(name);
+		}
+		keys[slot] = key;
+		lastSeen[slot] = tick;
+		samples[slot] = 0;
+		counts[slot] = 0;
+		size++;
+		added = true;
+		return slot;
+	}
+
+	// counters are only looked at once per interval, give them some slack
+	private boolean isLive(int lastSeenTick) {
+		return tick - lastSeenTick <= 2 * intervalTicks;
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldLastSeen = lastSeen;
+		int[] oldSamples = samples;
+		double[] oldMin = min;
+		double[] oldMax = max;
+		double[] oldSum = sum;
+		double[] oldLast = last;
+		long[] oldCounts = counts;
+
+		int live = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0 && isLive(oldLastSeen[i])) {
+				live++;
+			}
+		}
+		int capacity = live >= oldKeys.length / 2 ? oldKeys.length * 2 : oldKeys.length;
+		keys = new long[capacity];
+		lastSeen = new int[capacity];
+		samples = new int[capacity];
+		min = new double[capacity];
+		max = new double[capacity];
+		sum = new double[capacity];
+		last = new double[capacity];
+		counts = new long[capacity];
+		size = live;
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == 0 || !isLive(oldLastSeen[i])) {
+				continue;
+			}
+			int slot = (int) oldKeys[i] & mask;
+			while (keys[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = oldKeys[i];
+			lastSeen[slot] = oldLastSeen[i];
+			samples[slot] = oldSamples[i];
+			min[slot] = oldMin[i];
+			max[slot] = oldMax[i];
+			sum[slot] = oldSum[i];
+			last[slot] = oldLast[i];
+			counts[slot] = oldCounts[i];
+		}
+	}
+}
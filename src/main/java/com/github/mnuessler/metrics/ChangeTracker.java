@@ -0,0 +1,189 @@
+package com.github.mnuessler.metrics;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Remembers a fingerprint of the value last reported for each metric, so that metrics which did not change can be skipped. Metrics are
+ * identified by a 64 bit hash of their name and kept in an open addressing table of primitive arrays, about 24 bytes per metric. Metrics
+ * that were not seen in the previous interval are dropped when the table is resized. Metrics reported since the last
+ * {@link #commit()} are reported again in the next interval after a {@link #rollback()}, e.g. because their points could not be
+ * written. Instances are not thread-safe.
+ */
+final class ChangeTracker {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final int heartbeatIntervals;
+
+	private long[] keys = new long[INITIAL_CAPACITY];
+
+	private long[] fingerprints = new long[INITIAL_CAPACITY];
+
+	private int[] lastReported = new int[INITIAL_CAPACITY];
+
+	private int[] lastSeen = new int[INITIAL_CAPACITY];
+
+	private int size;
+
+	private int interval;
+
+	// keys of the metrics reported since the last commit
+	private long[] uncommitted = new long[INITIAL_CAPACITY];
+
+	private int uncommittedCount;
+
+	/**
+	 * @param heartbeatIntervals number of intervals after which a metric is reported even if its value did not change
+	 */
+	ChangeTracker(int heartbeatIntervals) {
+		if (heartbeatIntervals < 1) {
+			throw new IllegalArgumentException("Heartbeat must be at least one interval: " + heartbeatIntervals);
+		}
+		this.heartbeatIntervals = heartbeatIntervals;
+	}
+
+	/**
+	 * Starts a new report cycle.
+	 */
+	void nextInterval() {
+		interval++;
+	}
+
+	/**
+	 * Returns whether the metric has to be reported in the current interval, either because its fingerprint changed or because it has
+	 * not been reported for the heartbeat number of intervals.
+	 */
+	boolean changed(@Nonnull String name, long fingerprint) {
+		long key = hash(name);
+		int mask = keys.length - 1;
+		int slot = (int) key & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				lastSeen[slot] = interval;
+				if (fingerprints[slot] != fingerprint || interval - lastReported[slot] >= heartbeatIntervals) {
+					fingerprints[slot] = fingerprint;
+					lastReported[slot] = interval;
+					addUncommitted(key);
+					return true;
+				}
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = key;
+		fingerprints[slot] = fingerprint;
+		lastReported[slot] = interval;
+		lastSeen[slot] = interval;
+		addUncommitted(key);
+		if (++size > keys.length * 3 / 4) {
+			rehash();
+		}
+		return true;
+	}
+
+	/**
+	 * Confirms that the metrics reported since the last commit have been written.
+	 */
+	void commit() {
+		uncommittedCount = 0;
+	}
+
+	/**
+	 * Reports the metrics reported since the last commit again in the next interval, whether they change or not.
+	 */
+	void rollback() {
+		for (int i = 0; i < uncommittedCount; i++) {
+			rollback(uncommitted[i]);
+		}
+		uncommittedCount = 0;
+	}
+
+	/**
+	 * Reports the metric again in the next interval, e.g. because its point could not be encoded.
+	 */
+	void rollback(@Nonnull String name) {
+		rollback(hash(name));
+	}
+
+	private void rollback(long key) {
+		int mask = keys.length - 1;
+		int slot = (int) key & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				lastReported[slot] = interval - heartbeatIntervals;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void addUncommitted(long key) {
+		if (uncommittedCount == uncommitted.length) {
+			uncommitted = Arrays.copyOf(uncommitted, uncommittedCount * 2);
+		}
+		uncommitted[uncommittedCount++] = key;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		Arrays.fill(keys, 0);
+		size = 0;
+		uncommittedCount = 0;
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		long[] oldFingerprints = fingerprints;
+		int[] oldLastReported = lastReported;
+		int[] oldLastSeen = lastSeen;
+
+		int live = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0 && interval - oldLastSeen[i] <= 1) {
+				live++;
+			}
+		}
+		int capacity = live > oldKeys.length / 2 ? oldKeys.length * 2 : oldKeys.length;
+		keys = new long[capacity];
+		fingerprints = new long[capacity];
+		lastReported = new int[capacity];
+		lastSeen = new int[capacity];
+		size = live;
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == 0 || interval - oldLastSeen[i] > 1) {
+				continue;
+			}
+			int slot = (int) oldKeys[i] & mask;
+			while (keys[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = oldKeys[i];
+			fingerprints[slot] = oldFingerprints[i];
+			lastReported[slot] = oldLastReported[i];
+			lastSeen[slot] = oldLastSeen[i];
+		}
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the name with a final avalanche step, never 0 as that marks empty slots.
+	 */
+	static long hash(String name) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < name.length(); i++) {
+			hash ^= name.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash != 0 ? hash : 1;
+	}
+}
@@ -0,0 +1,115 @@
+package com.github.mnuessler.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The fields reported for histograms, meters and timers, by metric type and optionally overridden for metrics whose names match a
+ * pattern. The first matching pattern wins; the selection for a name is cached until evicted, so patterns are only matched the first
+ * time a metric is reported. Instances are thread-safe.
+ */
+final class FieldSelection {
+
+	private final Selection defaults;
+
+	private final List<Pattern> patterns;
+
+	private final List<Selection> overrides;
+
+	private final ConcurrentMap<String, Selection> selections = new ConcurrentHashMap<>();
+
+	FieldSelection(@Nonnull Set<MetricField> histogramFields, @Nonnull Set<MetricField> meterFields,
+			@Nonnull Set<MetricField> timerFields, @Nonnull List<Pattern> patterns, @Nonnull List<Set<MetricField>> overrides) {
+		this.defaults = new Selection(histogramFields, meterFields, timerFields);
+		this.patterns = new ArrayList<>(patterns);
+		this.overrides = new ArrayList<>(overrides.size());
+		for (Set<MetricField> fields : overrides) {
+			this.overrides.add(new Selection(fields, fields, fields));
+		}
+	}
+
+	boolean hasOverrides() {
+		return !patterns.isEmpty();
+	}
+
+	@Nonnull
+	Set<MetricField> histogramFields(@Nonnull String name) {
+		return selection(name).histogramFields;
+	}
+
+	@Nonnull
+	Set<MetricField> meterFields(@Nonnull String name) {
+		return selection(name).meterFields;
+	}
+
+	@Nonnull
+	Set<MetricField> timerFields(@Nonnull String name) {
+		return selection(name).timerFields;
+	}
+
+	private Selection selection(String name) {
+		if (patterns.isEmpty()) {
+			return defaults;
+		}
+		Selection selection = selections.get(name);
+		if (selection == null) {
+			selection = defaults;
+			for (int i = 0; i < patterns.size(); i++) {
+				if (patterns.get(i).matcher(name).matches()) {
+					selection = overrides.get(i);
+					break;
+				}
+			}
+			selections.put(name, selection);
+		}
+		return selection;
+	}
+
+	void evict(@Nonnull String name) {
+		selections.remove(name);
+	}
+
+	void clear() {
+		selections.clear();
+	}
+
+	/**
+	 * Returns whether any of the fields has to be computed from a snapshot.
+	 */
+	static boolean requiresSnapshot(@Nonnull Set<MetricField> fields) {
+		for (MetricField field : fields) {
+			if (MetricField.SNAPSHOT_FIELDS.contains(field)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Set<MetricField> intersection(Collection<MetricField> fields, Set<MetricField> applicable) {
+		Set<MetricField> result = fields.isEmpty() ? EnumSet.noneOf(MetricField.class) : EnumSet.copyOf(fields);
+		result.retainAll(applicable);
+		return result;
+	}
+
+	private static final class Selection {
+		final Set<MetricField> histogramFields;
+
+		final Set<MetricField> meterFields;
+
+		final Set<MetricField> timerFields;
+
+		Selection(Set<MetricField> histogramFields, Set<MetricField> meterFields, Set<MetricField> timerFields) {
+			this.histogramFields = intersection(histogramFields, MetricField.HISTOGRAM_FIELDS);
+			this.meterFields = intersection(meterFields, MetricField.METER_FIELDS);
+			this.timerFields = intersection(timerFields, MetricField.TIMER_FIELDS);
+		}
+	}
+}
@@ -1,12 +1,26 @@
 package com.github.mnuessler.metrics;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -18,16 +32,36 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
 import com.codahale.metrics.ScheduledReporter;
 import com.codahale.metrics.Snapshot;
 import com.codahale.metrics.Timer;
+import com.github.mnuessler.influxdb.FlushableInfluxDbClient;
 import com.github.mnuessler.influxdb.InfluxDbClient;
+import com.github.mnuessler.influxdb.LineProtocolBuffer;
 import com.github.mnuessler.influxdb.LineProtocolEncoder;
+import com.github.mnuessler.influxdb.Precision;
+import com.github.mnuessler.influxdb.SegmentPool;
+import com.github.mnuessler.influxdb.SeriesKeyCache;
 
 public class InfluxDbReporter extends ScheduledReporter {
 
+	static final int DEFAULT_SERIES_KEY_CACHE_SIZE = 100000;
+
+	static final int DEFAULT_MAX_POOLED_SEGMENTS = 256;
+
+	static final int DEFAULT_IDLE_REPORTS = 10;
+
+	static final long DEFAULT_FLUSH_TIMEOUT_MILLIS = 10000;
+
+	static final String DEFAULT_SELF_METRICS_PREFIX = "influxdb.reporter";
+
+	static final String DEFAULT_RETENTION_POLICY = "default";
+
 	public static Builder forRegistry(@Nonnull final MetricRegistry registry) {
 		return new Builder(registry);
 	}
@@ -39,10 +73,33 @@ public class InfluxDbReporter extends ScheduledReporter {
 		private String name;
 		private InfluxDbClient client;
 		private String database;
-		private String retentionPolicy = "default";
+		private String retentionPolicy = DEFAULT_RETENTION_POLICY;
 		private TimeUnit rateUnit = TimeUnit.SECONDS;
 		private TimeUnit durationUnit = TimeUnit.MILLISECONDS;
 		private final SortedMap<String, String> tags = new TreeMap<>();
+		private final List<MetricNameTemplate> templates = new ArrayList<>();
+		private Set<MetricField> histogramFields = MetricField.HISTOGRAM_FIELDS;
+		private Set<MetricField> meterFields = MetricField.METER_FIELDS;
+		private Set<MetricField> timerFields = MetricField.TIMER_FIELDS;
+		private final List<Pattern> fieldPatterns = new ArrayList<>();
+		private final List<Set<MetricField>> fieldOverrides = new ArrayList<>();
+		private int seriesKeyCacheSize = DEFAULT_SERIES_KEY_CACHE_SIZE;
+		private boolean directBuffer;
+		private int maxPooledSegments = DEFAULT_MAX_POOLED_SEGMENTS;
+		private int idleReports = DEFAULT_IDLE_REPORTS;
+		private long flushTimeoutMillis = DEFAULT_FLUSH_TIMEOUT_MILLIS;
+		private int heartbeatIntervals;
+		private int aggregationReports;
+		private int parallelism = 1;
+		private MetricRegistry selfMetricsRegistry;
+		private String selfMetricsPrefix = DEFAULT_SELF_METRICS_PREFIX;
+		private Precision precision = Precision.MILLISECONDS;
+		private boolean alignTimestamps;
+		private int batchBytes;
+		private boolean metricIndex;
+		private boolean alignSchedule;
+		private String phaseKey;
+		private long maxJitterMillis;
 
 		private Builder(@Nonnull final MetricRegistry registry) {
 			this.registry = registry;
@@ -86,14 +143,275 @@ public class InfluxDbReporter extends ScheduledReporter {
 			return this;
 		}
 
+		/**
+		 * Splits dotted metric names into measurement and tags with a Graphite-style template such as
+		 * {@code service.endpoint.method.measurement*}, optionally preceded by a filter pattern restricting the names it applies to and
+		 * followed by additional tags, e.g. {@code api.* .service.endpoint.measurement* source=api}. Templates with filter are tried in
+		 * the order they were added, the template without filter applies to all other names. Names no template applies to are reported
+		 * as they are. Tags taken from a name override the global tags.
+		 */
+		public Builder withTemplate(@Nonnull final String template) {
+			this.templates.add(MetricNameTemplate.parse(template));
+			return this;
+		}
+
+		/**
+		 * Fields reported for histograms, all by default. Statistics that are not selected are not computed, and if none of the selected
+		 * fields is taken from a snapshot, no snapshot is created.
+		 */
+		public Builder withHistogramFields(@Nonnull final MetricField... fields) {
+			this.histogramFields = fields(fields, MetricField.HISTOGRAM_FIELDS, "histograms");
+			return this;
+		}
+
+		/**
+		 * Fields reported for meters, all by default.
+		 */
+		public Builder withMeterFields(@Nonnull final MetricField... fields) {
+			this.meterFields = fields(fields, MetricField.METER_FIELDS, "meters");
+			return this;
+		}
+
+		/**
+		 * Fields reported for timers, all by default. Statistics that are not selected are not computed, and if none of the selected
+		 * fields is taken from a snapshot, no snapshot is created.
+		 */
+		public Builder withTimerFields(@Nonnull final MetricField... fields) {
+			this.timerFields = fields(fields, MetricField.TIMER_FIELDS, "timers");
+			return this;
+		}
+
+		/**
+		 * Overrides the fields reported for histograms, meters and timers whose name matches the regular expression. Fields that do not
+		 * apply to the type of a metric are ignored, a metric left without fields is not reported. The first matching pattern wins.
+		 */
+		public Builder withFields(@Nonnull final String namePattern, @Nonnull final MetricField... fields) {
+			this.fieldPatterns.add(Pattern.compile(namePattern));
+			this.fieldOverrides.add(fields.length > 0 ? EnumSet.copyOf(Arrays.asList(fields)) : EnumSet.noneOf(MetricField.class));
+			return this;
+		}
+
+		private static Set<MetricField> fields(MetricField[] fields, Set<MetricField> applicable, String type) {
+			Set<MetricField> result = EnumSet.noneOf(MetricField.class);
+			for (MetricField field : fields) {
+				if (!applicable.contains(field)) {
+					throw new IllegalArgumentException("Field " + field + " does not apply to " + type);
+				}
+				result.add(field);
+			}
+			if (result.isEmpty()) {
+				throw new IllegalArgumentException("At least one field has to be reported for " + type);
+			}
+			return result;
+		}
+
+		/**
+		 * Maximum number of escaped series keys kept between report cycles, {@code 0} disables the cache.
+		 */
+		public Builder withSeriesKeyCacheSize(final int seriesKeyCacheSize) {
+			if (seriesKeyCacheSize < 0) {
+				throw new IllegalArgumentException("Series key cache size must not be negative: " + seriesKeyCacheSize);
+			}
+			this.seriesKeyCacheSize = seriesKeyCacheSize;
+			return this;
+		}
+
+		/**
+		 * Encode the payload into a direct buffer, keeping it off the Java heap.
+		 */
+		public Builder withDirectBuffer(final boolean directBuffer) {
+			this.directBuffer = directBuffer;
+			return this;
+		}
+
+		/**
+		 * Limits the memory kept for payloads between reports. Payloads are encoded into segments of
+		 * {@value SegmentPool#DEFAULT_SEGMENT_SIZE} bytes taken from a pool, which keeps at most the given number of segments, by
+		 * default {@value #DEFAULT_MAX_POOLED_SEGMENTS}, and releases segments that were not needed for the given number of reports, by
+		 * default {@value #DEFAULT_IDLE_REPORTS}.
+		 */
+		public Builder withBufferPool(final int maxSegments, final int idleReports) {
+			if (maxSegments < 0 || idleReports < 1) {
+				throw new IllegalArgumentException("Invalid buffer pool: " + maxSegments + " segments, " + idleReports + " reports");
+			}
+			this.maxPooledSegments = maxSegments;
+			this.idleReports = idleReports;
+			return this;
+		}
+
+		/**
+		 * Writes the points of a report in batches of about the given number of bytes while the metrics are still being encoded, so the
+		 * memory a report needs does not grow with the number of metrics. The points of a report then reach InfluxDB in several
+		 * requests; a failed batch is counted as a failed write and does not stop the following batches.
+		 */
+		public Builder withStreaming(final int batchBytes) {
+			if (batchBytes < 1) {
+				throw new IllegalArgumentException("Batch size must be positive: " + batchBytes);
+			}
+			this.batchBytes = batchBytes;
+			return this;
+		}
+
+		/**
+		 * Reports the metrics of an index kept current by listening to the registry, instead of copying the registry into sorted maps
+		 * on every report, and encodes the series keys of the metrics once, when they are added. The filter is then only evaluated when
+		 * a metric is added, so it must not depend on the value of the metric, and metrics are reported in the order they were added.
+		 */
+		public Builder withMetricIndex() {
+			this.metricIndex = true;
+			return this;
+		}
+
+		/**
+		 * Maximum time {@link InfluxDbReporter#stop()} waits for a {@link FlushableInfluxDbClient} to send queued payloads.
+		 */
+		public Builder withFlushTimeout(final long timeout, @Nonnull final TimeUnit unit) {
+			this.flushTimeoutMillis = unit.toMillis(timeout);
+			return this;
+		}
+
+		/**
+		 * Only report metrics whose value changed since they were last reported, but each metric at least every
+		 * {@code heartbeatIntervals} reports. Gauges and counters are compared by value, aggregated gauges also by minimum, maximum and
+		 * mean; histograms, meters and timers by count, so their rates and percentiles are not refreshed while they are idle.
+		 */
+		public Builder withChangeOnlyReporting(final int heartbeatIntervals) {
+			if (heartbeatIntervals < 1) {
+				throw new IllegalArgumentException("Heartbeat must be at least one interval: " + heartbeatIntervals);
+			}
+			this.heartbeatIntervals = heartbeatIntervals;
+			return this;
+		}
+
+		/**
+		 * Aggregates the given number of reports into one write. Gauges are sampled on every report and written with the minimum,
+		 * maximum and mean of their numeric values and the number of samples besides their last value, counters with their change
+		 * since the previous write besides their count. Histograms, meters and timers aggregate by themselves and are written as they
+		 * are at the end of the interval. E.g. with a period of one second and 30 reports, gauges are sampled every second and points
+		 * are written every 30 seconds.
+		 */
+		public Builder withAggregation(final int reports) {
+			if (reports < 1) {
+				throw new IllegalArgumentException("Aggregation must cover at least one report: " + reports);
+			}
+			this.aggregationReports = reports;
+			return this;
+		}
+
+		/**
+		 * Computes histogram and timer snapshots and encodes their points on the given number of threads. Computing a snapshot sorts the
+		 * reservoir, which makes reporting thousands of histograms or timers on a single thread slow.
+		 */
+		public Builder withParallelism(final int parallelism) {
+			if (parallelism < 1) {
+				throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+			}
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		/**
+		 * Precision of the timestamps of the reported points, defaults to milliseconds. Has to match the precision of the client.
+		 */
+		public Builder withPrecision(@Nonnull final Precision precision) {
+			this.precision = precision;
+			return this;
+		}
+
+		/**
+		 * Rounds the timestamp of each report to the nearest multiple of the reporting period, so that all points of a report, and the
+		 * points of reporters in other JVMs with the same period, share the timestamp of the period. Has no effect on reports not
+		 * triggered by {@link InfluxDbReporter#start(long, TimeUnit)}.
+		 */
+		public Builder withAlignedTimestamps() {
+			this.alignTimestamps = true;
+			return this;
+		}
+
+		/**
+		 * Runs reports at multiples of the period since the epoch, e.g. at every full minute for a period of one minute, instead of at
+		 * multiples of the period since {@link InfluxDbReporter#start(long, TimeUnit)} was called.
+		 */
+		public Builder withAlignedSchedule() {
+			this.alignSchedule = true;
+			return this;
+		}
+
+		/**
+		 * Delays the reports by a stable offset within the period, derived from a hash of the given key, e.g. host and application name,
+		 * so that instances started at the same time spread their writes over the period. With {@link #withAlignedTimestamps()}, points
+		 * keep the timestamp of the period they belong to.
+		 */
+		public Builder withPhaseOffset(@Nonnull final String instanceKey) {
+			this.phaseKey = instanceKey;
+			return this;
+		}
+
+		/**
+		 * Delays each report by a random time below the given maximum, which spreads the writes of instances with the same phase.
+		 */
+		public Builder withJitter(final long maxJitter, @Nonnull final TimeUnit unit) {
+			if (maxJitter < 0) {
+				throw new IllegalArgumentException("Jitter must not be negative: " + maxJitter);
+			}
+			this.maxJitterMillis = unit.toMillis(maxJitter);
+			return this;
+		}
+
+		/**
+		 * Publishes metrics about the reporter itself into the given registry: collect and write times, points and bytes per report,
+		 * points skipped as invalid or unchanged and failed writes. The registry may be the one being reported. Reporters of an
+		 * {@link InfluxDbReportingHub} only publish the collect metrics, see {@link InfluxDbReportingHub.Builder#withSelfMetrics}.
+		 */
+		public Builder withSelfMetrics(@Nonnull final MetricRegistry registry) {
+			return withSelfMetrics(registry, DEFAULT_SELF_METRICS_PREFIX);
+		}
+
+		public Builder withSelfMetrics(@Nonnull final MetricRegistry registry, @Nonnull final String prefix) {
+			this.selfMetricsRegistry = registry;
+			this.selfMetricsPrefix = prefix;
+			return this;
+		}
+
 		public InfluxDbReporter build() {
-			return new InfluxDbReporter(registry, name, filter, rateUnit, durationUnit, database, retentionPolicy, client, tags);
+			SeriesKeyCache seriesKeyCache = seriesKeyCacheSize > 0 ? new SeriesKeyCache(seriesKeyCacheSize) : null;
+			SegmentPool segmentPool = new SegmentPool(SegmentPool.DEFAULT_SEGMENT_SIZE, directBuffer, maxPooledSegments, idleReports);
+			FieldSelection fieldSelection = new FieldSelection(histogramFields, meterFields, timerFields, fieldPatterns, fieldOverrides);
+			ChangeTracker changeTracker = heartbeatIntervals > 0 ? new ChangeTracker(heartbeatIntervals) : null;
+			Aggregator aggregator = aggregationReports > 0 ? new Aggregator(aggregationReports) : null;
+			ReporterMetrics selfMetrics = selfMetricsRegistry != null
+					? new ReporterMetrics(selfMetricsRegistry, selfMetricsPrefix, client)
+					: null;
+			ReportSchedule schedule = alignSchedule || phaseKey != null || maxJitterMillis > 0
+					? new ReportSchedule(alignSchedule, phaseKey, maxJitterMillis)
+					: null;
+			return new InfluxDbReporter(registry, name, newExecutor(name), schedule, filter, rateUnit, durationUnit, database,
+					retentionPolicy, client, tags, templates, fieldSelection, seriesKeyCache, segmentPool, flushTimeoutMillis,
+					changeTracker, aggregator, parallelism, selfMetrics, precision, alignTimestamps, batchBytes, metricIndex);
 		}
 	}
 
 	private static final Logger LOG = LoggerFactory.getLogger(InfluxDbReporter.class);
 
-	private final LineProtocolEncoder encoder = new LineProtocolEncoder();
+	// below this number of histograms and timers, handing them to other threads costs more than it saves
+	private static final int MIN_PARALLEL_METRICS = 64;
+
+	// histograms and timers encoded by each worker before a batch is written in streaming mode
+	private static final int STREAMING_METRICS_PER_WORKER = 256;
+
+	private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+	private final MetricRegistry registry;
+
+	private final LineProtocolEncoder encoder;
+
+	private final SeriesKeyCache seriesKeyCache;
+
+	private final MetricNameParser nameParser;
+
+	private final FieldSelection fieldSelection;
+
+	private final MetricRegistryListener removalListener;
 
 	private final MetricFilter filter;
 
@@ -105,137 +423,859 @@ public class InfluxDbReporter extends ScheduledReporter {
 
 	private final InfluxDbClient client;
 
-	private final AtomicInteger bufferInitialCapacity = new AtomicInteger(500);
+	private final SegmentPool segmentPool;
+
+	private final LineProtocolBuffer buffer;
+
+	private final long flushTimeoutMillis;
+
+	private final ChangeTracker changeTracker;
+
+	private final Aggregator aggregator;
+
+	private final ForkJoinPool pool;
+
+	private final SnapshotWorker[] workers;
+
+	private final MetricIndex index;
+
+	// the metrics of the last report, copied from the index or collected from the maps passed in
+	private final MetricIndex.View view = new MetricIndex.View();
+
+	// histograms and timers handed to the snapshot workers
+	private String[] snapshotNames = new String[0];
+
+	private byte[][] snapshotSeriesKeys = new byte[0][];
+
+	private Metric[] snapshotMetrics = new Metric[0];
+
+	private int snapshotCount;
+
+	private final ReporterMetrics selfMetrics;
+
+	private final Precision precision;
+
+	private final boolean alignTimestamps;
+
+	private final ScheduledExecutorService executor;
+
+	// null to report at a fixed rate since the start
+	private final ReportSchedule schedule;
+
+	// the slot of the scheduled report running, 0 if none
+	private long slotMillis;
 
-	private InfluxDbReporter(MetricRegistry registry, String name, MetricFilter filter, TimeUnit rateUnit, TimeUnit durationUnit,
-			String database, String retentionPolicy, InfluxDbClient client, SortedMap<String, String> tags) {
-		super(registry, name, filter, rateUnit, durationUnit);
+	// 0 unless streaming
+	private final int batchBytes;
+
+	private volatile long periodMillis;
+
+	// counts of the current report cycle
+	private int points;
+
+	private int invalidPoints;
+
+	private int unchangedPoints;
+
+	private long writtenBytes;
+
+	private long writeNanos;
+
+	private InfluxDbReporter(MetricRegistry registry, String name, ScheduledExecutorService executor, ReportSchedule schedule,
+			MetricFilter filter, TimeUnit rateUnit, TimeUnit durationUnit, String database, String retentionPolicy, InfluxDbClient client,
+			SortedMap<String, String> tags, List<MetricNameTemplate> templates, FieldSelection fieldSelection,
+			SeriesKeyCache seriesKeyCache, SegmentPool segmentPool, long flushTimeoutMillis, ChangeTracker changeTracker,
+			Aggregator aggregator, int parallelism, ReporterMetrics selfMetrics, Precision precision, boolean alignTimestamps,
+			int batchBytes, boolean metricIndex) {
+		super(registry, name, filter, rateUnit, durationUnit, executor);
+		this.registry = registry;
+		this.executor = executor;
+		this.schedule = schedule;
 		this.filter = filter;
 		this.database = database;
 		this.retentionPolicy = retentionPolicy;
 		this.client = client;
-		this.tags = tags;
+		// copied, the series key cache relies on the tags not changing after the reporter was built
+		this.tags = Collections.unmodifiableSortedMap(new TreeMap<>(tags));
+		this.nameParser = templates.isEmpty() ? null : new MetricNameParser(templates, this.tags);
+		this.fieldSelection = fieldSelection;
+		this.seriesKeyCache = seriesKeyCache;
+		this.encoder = new LineProtocolEncoder(seriesKeyCache, precision);
+		this.segmentPool = segmentPool;
+		this.buffer = new LineProtocolBuffer(segmentPool);
+		this.flushTimeoutMillis = flushTimeoutMillis;
+		this.changeTracker = changeTracker;
+		this.aggregator = aggregator;
+		this.selfMetrics = selfMetrics;
+		this.precision = precision;
+		this.alignTimestamps = alignTimestamps;
+		this.batchBytes = batchBytes;
+		if (parallelism > 1) {
+			this.pool = new ForkJoinPool(parallelism, new ReporterThreadFactory(), null, false);
+			// a few chunks per thread even out metrics of different reservoir sizes
+			this.workers = new SnapshotWorker[parallelism * 4];
+			for (int i = 0; i < workers.length; i++) {
+				workers[i] = new SnapshotWorker(new LineProtocolEncoder(seriesKeyCache, precision),
+						new LineProtocolBuffer(segmentPool));
+			}
+		} else {
+			this.pool = null;
+			this.workers = null;
+		}
+		if (seriesKeyCache != null || nameParser != null || fieldSelection.hasOverrides()) {
+			this.removalListener = new RemovalListener();
+			registry.addListener(removalListener);
+		} else {
+			this.removalListener = null;
+		}
+		if (metricIndex) {
+			this.index = new MetricIndex(filter, nameParser, this.tags);
+			registry.addListener(index);
+		} else {
+			this.index = null;
+		}
 	}
 
-	public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms,
-			SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
-		long now = System.currentTimeMillis();
-		int capacity = bufferInitialCapacity.get();
-		StringBuilder buffer = new StringBuilder(capacity);
+	private static ScheduledExecutorService newExecutor(final String name) {
+		final int id = POOL_COUNTER.incrementAndGet();
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "metrics-" + name + "-" + id);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// a pending report must not delay stop()
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		return executor;
+	}
 
-		appendGauges(buffer, gauges, now);
-		appendCounters(buffer, counters, now);
-		appendHistograms(buffer, histograms, now);
-		appendMeters(buffer, meters, now);
-		appendTimers(buffer, timers, now);
+	@Override
+	public void start(long period, TimeUnit unit) {
+		this.periodMillis = unit.toMillis(period);
+		if (schedule == null) {
+			super.start(period, unit);
+		} else {
+			scheduleReport(schedule.firstSlot(System.currentTimeMillis(), periodMillis));
+		}
+	}
+
+	Precision getPrecision() {
+		return precision;
+	}
 
-		bufferInitialCapacity.compareAndSet(capacity, Math.max(capacity, buffer.length()));
+	/**
+	 * Sets the period of reports triggered by someone else, e.g. an {@link InfluxDbReportingHub}, for aligned timestamps.
+	 */
+	void setPeriod(long period, TimeUnit unit) {
+		this.periodMillis = unit.toMillis(period);
+	}
+
+	/**
+	 * Schedules the report of the slot, which schedules the report of the next slot once it ran.
+	 */
+	private void scheduleReport(final long slot) {
+		long delay = schedule.runAt(slot, periodMillis) - System.currentTimeMillis();
+		try {
+			executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						report(slot);
+					} catch (RuntimeException e) {
+						LOG.error("Failed to report metrics", e);
+					}
+					scheduleReport(schedule.nextSlot(slot, System.currentTimeMillis(), periodMillis));
+				}
+			}, Math.max(0, delay), TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			LOG.debug("Reporter stopped, not scheduling further reports");
+		}
+	}
+
+	private synchronized void report(long slot) {
+		slotMillis = slot;
+		try {
+			report();
+		} finally {
+			slotMillis = 0;
+		}
+	}
+
+	@Override
+	public void stop() {
+		try {
+			super.stop();
+			if (client instanceof FlushableInfluxDbClient) {
+				flush((FlushableInfluxDbClient) client);
+			}
+		} finally {
+			if (removalListener != null) {
+				registry.removeListener(removalListener);
+			}
+			if (index != null) {
+				registry.removeListener(index);
+			}
+			if (seriesKeyCache != null) {
+				seriesKeyCache.clear();
+			}
+			if (nameParser != null) {
+				nameParser.clear();
+			}
+			fieldSelection.clear();
+			synchronized (this) {
+				if (changeTracker != null) {
+					changeTracker.clear();
+				}
+				if (aggregator != null) {
+					aggregator.clear();
+				}
+				view.clear();
+			}
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private void flush(FlushableInfluxDbClient asyncClient) {
+		try {
+			if (!asyncClient.flush(flushTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				LOG.info("Timed out after {} ms waiting for {} queued payloads to be sent to InfluxDB", flushTimeoutMillis,
+						asyncClient.getQueueSize());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reports the metrics of the index, if there is one, or else the metrics of the registry accepted by the filter.
+	 */
+	@Override
+	public synchronized void report() {
+		if (aggregator != null && !aggregator.nextTick()) {
+			// between the reports of an aggregation interval only the gauges are sampled
+			if (index != null) {
+				index.update(view);
+				sampleGauges(view.gauges);
+			} else {
+				sampleGauges(registry.getGauges(filter), false);
+			}
+			return;
+		}
+		if (index != null) {
+			index.update(view);
+			report(view);
+		} else {
+			// the registry applies the filter
+			report(registry.getGauges(filter), registry.getCounters(filter), registry.getHistograms(filter), registry.getMeters(filter),
+					registry.getTimers(filter), false);
+		}
+	}
+
+	public synchronized void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters,
+			SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+		if (aggregator != null && !aggregator.nextTick()) {
+			sampleGauges(gauges, true);
+			return;
+		}
+		report(gauges, counters, histograms, meters, timers, true);
+	}
+
+	private void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms,
+			SortedMap<String, Meter> meters, SortedMap<String, Timer> timers, boolean applyFilter) {
+		view.clear();
+		collect(view.gauges, gauges, applyFilter);
+		collect(view.counters, counters, applyFilter);
+		collect(view.histograms, histograms, applyFilter);
+		collect(view.meters, meters, applyFilter);
+		collect(view.timers, timers, applyFilter);
+		try {
+			report(view);
+		} finally {
+			view.clear();
+		}
+	}
+
+	private void collect(MetricIndex.Section section, SortedMap<String, ? extends Metric> metrics, boolean applyFilter) {
+		for (Map.Entry<String, ? extends Metric> entry : metrics.entrySet()) {
+			if (!applyFilter || filter.matches(entry.getKey(), entry.getValue())) {
+				section.add(entry.getKey(), entry.getValue(), null);
+			}
+		}
+	}
+
+	/**
+	 * Reports the metrics at the end of an aggregation interval, or on every report without aggregation.
+	 */
+	private void report(MetricIndex.View metrics) {
+		long now = timestamp(System.currentTimeMillis());
+		long collectStart = System.nanoTime();
+		// segments are taken from the pool and returned after the write, so steady state reporting does not allocate payload buffers
+		buffer.clear();
+		points = 0;
+		invalidPoints = 0;
+		unchangedPoints = 0;
+		writtenBytes = 0;
+		writeNanos = 0;
+		if (changeTracker != null) {
+			changeTracker.nextInterval();
+		}
+
+		try {
+			appendGauges(buffer, metrics.gauges, now);
+			appendCounters(buffer, metrics.counters, now);
+			// a stopped reporter encodes serially, its pool does not accept tasks anymore
+			if (pool != null && !pool.isShutdown() && metrics.histograms.size() + metrics.timers.size() >= MIN_PARALLEL_METRICS) {
+				appendSnapshotsInParallel(buffer, metrics.histograms, now);
+				appendMeters(buffer, metrics.meters, now);
+				appendSnapshotsInParallel(buffer, metrics.timers, now);
+			} else {
+				appendHistograms(buffer, metrics.histograms, now);
+				appendMeters(buffer, metrics.meters, now);
+				appendTimers(buffer, metrics.timers, now);
+			}
+			write();
+		} finally {
+			// metrics whose points were not written, e.g. because encoding failed, are reported again in the next report
+			if (changeTracker != null) {
+				changeTracker.rollback();
+			}
+		}
+		if (selfMetrics != null) {
+			// under a hub, handing the points over is part of collecting them
+			long collectNanos = System.nanoTime() - collectStart - (selfMetrics.writeTime != null ? writeNanos : 0);
+			selfMetrics.collectTime.update(collectNanos, TimeUnit.NANOSECONDS);
+			selfMetrics.points.update(points);
+			selfMetrics.invalidPoints.inc(invalidPoints);
+			selfMetrics.unchangedPoints.inc(unchangedPoints);
+			if (selfMetrics.writeTime != null) {
+				selfMetrics.bytes.update(writtenBytes);
+				if (writtenBytes > 0) {
+					selfMetrics.writeTime.update(writeNanos, TimeUnit.NANOSECONDS);
+				}
+			}
+		}
+		segmentPool.trim();
+	}
+
+	/**
+	 * Writes and clears the buffer, unless it is empty.
+	 */
+	private void write() {
+		if (buffer.length() == 0) {
+			return;
+		}
 		LOG.trace("Payload: \n{}", buffer);
+		long writeStart = System.nanoTime();
 		try {
 			client.write(buffer, database, retentionPolicy);
+			if (changeTracker != null) {
+				changeTracker.commit();
+			}
 		} catch (Exception e) {
 			LOG.info("Failed to send metrics to InfluxDB", e);
+			if (selfMetrics != null && selfMetrics.writeFailures != null) {
+				selfMetrics.writeFailures.inc();
+			}
+			// the points are lost, so their metrics have to be reported again even if they do not change
+			if (changeTracker != null) {
+				changeTracker.rollback();
+			}
+		} finally {
+			writeNanos += System.nanoTime() - writeStart;
+			writtenBytes += buffer.length();
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Writes the buffer once it holds a full batch in streaming mode.
+	 */
+	private void writeFullBatch() {
+		if (batchBytes > 0 && buffer.length() >= batchBytes) {
+			write();
+		}
+	}
+
+	/**
+	 * Returns the timestamp of the points of a report in the configured precision.
+	 */
+	private long timestamp(long currentTimeMillis) {
+		long period = periodMillis;
+		if (alignTimestamps && period > 0) {
+			// the nearest boundary, as the report may run a little before or after it, or after its phase offset and jitter
+			long time = slotMillis != 0 ? slotMillis : currentTimeMillis;
+			currentTimeMillis = (time + period / 2) / period * period;
 		}
+		return precision.convert(currentTimeMillis, TimeUnit.MILLISECONDS);
 	}
 
-	private void appendGauges(StringBuilder buffer, SortedMap<String, Gauge> gauges, long timestamp) {
+	/**
+	 * Starts the point of a metric, with its series key if the index encoded it.
+	 */
+	private LineProtocolEncoder.PointWriter beginPoint(LineProtocolEncoder encoder, LineProtocolBuffer buffer, String name,
+			byte[] seriesKey) {
+		if (seriesKey != null) {
+			return encoder.beginPoint(buffer, seriesKey, name);
+		}
+		if (nameParser == null) {
+			return encoder.beginPoint(buffer, name, tags);
+		}
+		MetricNameParser.ParsedName parsedName = nameParser.parse(name);
+		return encoder.beginPoint(buffer, name, parsedName.measurement, parsedName.tags);
+	}
+
+	private void pointAppended(boolean written) {
+		if (written) {
+			points++;
+		} else {
+			invalidPoints++;
+		}
+		writeFullBatch();
+	}
+
+	private void sampleGauges(SortedMap<String, Gauge> gauges, boolean applyFilter) {
 		for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
-			String measurement = entry.getKey();
-			Gauge gauge = entry.getValue();
-			if (!filter.matches(measurement, gauge)) {
+			if (applyFilter && !filter.matches(entry.getKey(), entry.getValue())) {
 				continue;
 			}
+			Object value = entry.getValue().getValue();
+			if (value instanceof Number) {
+				sample(entry.getKey(), (Number) value);
+			}
+		}
+	}
+
+	private void sampleGauges(MetricIndex.Section gauges) {
+		for (int i = 0; i < gauges.size(); i++) {
+			Object value = ((Gauge) gauges.metric(i)).getValue();
+			if (value instanceof Number) {
+				sample(gauges.name(i), (Number) value);
+			}
+		}
+	}
 
-			Map<String, Object> fields = Collections.singletonMap("value", gauge.getValue());
-			encoder.encodeInto(buffer, measurement, fields, tags, timestamp);
+	/**
+	 * Returns the slot of the gauge in the aggregator, or {@code -1} if it has no samples.
+	 */
+	private int sample(String name, Number value) {
+		double sample = value.doubleValue();
+		if (Double.isNaN(sample) || Double.isInfinite(sample)) {
+			return -1;
 		}
+		return aggregator.sample(name, sample);
 	}
 
-	private void appendCounters(StringBuilder buffer, SortedMap<String, Counter> counters, long timestamp) {
-		for (Map.Entry<String, Counter> entry : counters.entrySet()) {
-			String measurement = entry.getKey();
-			Counter counter = entry.getValue();
-			if (!filter.matches(measurement, counter)) {
+	private void appendGauges(LineProtocolBuffer buffer, MetricIndex.Section gauges, long timestamp) {
+		for (int i = 0; i < gauges.size(); i++) {
+			String measurement = gauges.name(i);
+			Object value = ((Gauge) gauges.metric(i)).getValue();
+			int slot = aggregator != null && value instanceof Number ? sample(measurement, (Number) value) : -1;
+			// a skipped point keeps its samples, so the next point written covers all samples since the previous one
+			if (changeTracker != null && !changed(measurement, slot >= 0 ? aggregateFingerprint(value, slot) : fingerprint(value))) {
 				continue;
 			}
 
-			Map<String, ?> fields = Collections.singletonMap("count", counter.getCount());
-			encoder.encodeInto(buffer, measurement, fields, tags, timestamp);
+			LineProtocolEncoder.PointWriter point = beginPoint(encoder, buffer, measurement, gauges.seriesKey(i)).field("value", value);
+			if (slot >= 0) {
+				point.field("min", aggregator.min(slot))
+						.field("max", aggregator.max(slot))
+						.field("mean", aggregator.mean(slot))
+						.field("samples", (long) aggregator.samples(slot));
+				aggregator.reset(slot);
+			}
+			pointAppended(point.end(timestamp));
 		}
 	}
 
-	private void appendHistograms(final StringBuilder buffer, final SortedMap<String, Histogram> histograms, final long timestamp) {
-		for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
-			String measurement = entry.getKey();
-			Histogram histogram = entry.getValue();
-			Snapshot snapshot = histogram.getSnapshot();
-			if (!filter.matches(measurement, histogram)) {
+	private void appendCounters(LineProtocolBuffer buffer, MetricIndex.Section counters, long timestamp) {
+		for (int i = 0; i < counters.size(); i++) {
+			String measurement = counters.name(i);
+			long count = ((Counter) counters.metric(i)).getCount();
+			// taken before change tracking, which must not skip remembering the count
+			long delta = aggregator != null ? aggregator.delta(measurement, count) : 0;
+			if (!changed(measurement, count)) {
 				continue;
 			}
 
-			Map<String, Object> fields = new HashMap<>();
-			fields.put("min", snapshot.getMin());
-			fields.put("max", snapshot.getMax());
-			fields.put("mean", snapshot.getMean());
-			fields.put("median", snapshot.getMedian());
-			fields.put("std-dev", snapshot.getStdDev());
-			fields.put("count", histogram.getCount());
-			fields.put("75-percentile", convertDuration(snapshot.get75thPercentile()));
-			fields.put("95-percentile", snapshot.get95thPercentile());
-			fields.put("98-percentile", snapshot.get98thPercentile());
-			fields.put("99-percentile", snapshot.get99thPercentile());
-			fields.put("999-percentile", snapshot.get999thPercentile());
+			LineProtocolEncoder.PointWriter point = beginPoint(encoder, buffer, measurement, counters.seriesKey(i)).field("count", count);
+			if (aggregator != null) {
+				point.field("delta", delta);
+			}
+			pointAppended(point.end(timestamp));
+		}
+	}
 
-			encoder.encodeInto(buffer, measurement, fields, tags, timestamp);
+	private void appendHistograms(final LineProtocolBuffer buffer, final MetricIndex.Section histograms, final long timestamp) {
+		for (int i = 0; i < histograms.size(); i++) {
+			String measurement = histograms.name(i);
+			Histogram histogram = (Histogram) histograms.metric(i);
+			if (isReported(measurement, histogram)) {
+				pointAppended(appendHistogram(encoder, buffer, measurement, histograms.seriesKey(i), histogram, timestamp));
+			}
+		}
+	}
+
+	private boolean isReported(String measurement, Histogram histogram) {
+		return !fieldSelection.histogramFields(measurement).isEmpty() && changed(measurement, histogram.getCount());
+	}
+
+	private boolean appendHistogram(LineProtocolEncoder encoder, LineProtocolBuffer buffer, String measurement, byte[] seriesKey,
+			Histogram histogram, long timestamp) {
+		Set<MetricField> fields = fieldSelection.histogramFields(measurement);
+		LineProtocolEncoder.PointWriter point = beginPoint(encoder, buffer, measurement, seriesKey);
+		if (fields.contains(MetricField.COUNT)) {
+			point.field(MetricField.COUNT.getName(), histogram.getCount());
 		}
+		if (FieldSelection.requiresSnapshot(fields)) {
+			appendSnapshot(point, histogram.getSnapshot(), fields, false);
+		}
+		return point.end(timestamp);
 	}
 
-	private void appendMeters(StringBuilder buffer, SortedMap<String, Meter> meters, long timestamp) {
-		for (Map.Entry<String, Meter> entry : meters.entrySet()) {
-			String measurement = entry.getKey();
-			Meter meter = entry.getValue();
-			if (!filter.matches(measurement, meter)) {
+	private void appendMeters(LineProtocolBuffer buffer, MetricIndex.Section meters, long timestamp) {
+		for (int i = 0; i < meters.size(); i++) {
+			String measurement = meters.name(i);
+			Meter meter = (Meter) meters.metric(i);
+			Set<MetricField> fields = fieldSelection.meterFields(measurement);
+			if (fields.isEmpty() || !changed(measurement, meter.getCount())) {
 				continue;
 			}
 
-			Map<String, Object> fields = new HashMap<>();
-			fields.put("count", meter.getCount());
-			fields.put("mean-rate", convertRate(meter.getMeanRate()));
-			fields.put("1-min-rate", convertRate(meter.getOneMinuteRate()));
-			fields.put("5-min-rate", convertRate(meter.getFiveMinuteRate()));
-			fields.put("15-min-rate", convertRate(meter.getFifteenMinuteRate()));
+			LineProtocolEncoder.PointWriter point = beginPoint(encoder, buffer, measurement, meters.seriesKey(i));
+			appendMetered(point, meter, fields);
+			pointAppended(point.end(timestamp));
+		}
+	}
 
-			encoder.encodeInto(buffer, measurement, fields, tags, timestamp);
+	private void appendTimers(LineProtocolBuffer buffer, MetricIndex.Section timers, long timestamp) {
+		for (int i = 0; i < timers.size(); i++) {
+			String measurement = timers.name(i);
+			Timer timer = (Timer) timers.metric(i);
+			if (isReported(measurement, timer)) {
+				pointAppended(appendTimer(encoder, buffer, measurement, timers.seriesKey(i), timer, timestamp));
+			}
 		}
 	}
 
-	private void appendTimers(StringBuilder buffer, SortedMap<String, Timer> timers, long timestamp) {
-		for (Map.Entry<String, Timer> entry : timers.entrySet()) {
-			String measurement = entry.getKey();
-			Timer timer = entry.getValue();
-			Snapshot snapshot = timer.getSnapshot();
-			if (!filter.matches(measurement, timer)) {
-				continue;
+	private boolean isReported(String measurement, Timer timer) {
+		return !fieldSelection.timerFields(measurement).isEmpty() && changed(measurement, timer.getCount());
+	}
+
+	private boolean appendTimer(LineProtocolEncoder encoder, LineProtocolBuffer buffer, String measurement, byte[] seriesKey, Timer timer,
+			long timestamp) {
+		Set<MetricField> fields = fieldSelection.timerFields(measurement);
+		LineProtocolEncoder.PointWriter point = beginPoint(encoder, buffer, measurement, seriesKey);
+		appendMetered(point, timer, fields);
+		if (FieldSelection.requiresSnapshot(fields)) {
+			appendSnapshot(point, timer.getSnapshot(), fields, true);
+		}
+		return point.end(timestamp);
+	}
+
+	private void appendMetered(LineProtocolEncoder.PointWriter point, Metered metered, Set<MetricField> fields) {
+		for (MetricField field : fields) {
+			switch (field) {
+			case COUNT:
+				point.field(field.getName(), metered.getCount());
+				break;
+			case MEAN_RATE:
+				point.field(field.getName(), convertRate(metered.getMeanRate()));
+				break;
+			case M1_RATE:
+				point.field(field.getName(), convertRate(metered.getOneMinuteRate()));
+				break;
+			case M5_RATE:
+				point.field(field.getName(), convertRate(metered.getFiveMinuteRate()));
+				break;
+			case M15_RATE:
+				point.field(field.getName(), convertRate(metered.getFifteenMinuteRate()));
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Appends the selected statistics of the snapshot, converting them to the duration unit for timers. Minimum and maximum remain
+	 * integer fields, as InfluxDB rejects points whose fields change their type, so those of timers are rounded to the duration unit.
+	 */
+	private void appendSnapshot(LineProtocolEncoder.PointWriter point, Snapshot snapshot, Set<MetricField> fields, boolean durations) {
+		for (MetricField field : fields) {
+			switch (field) {
+			case MIN:
+				appendStatistic(point, field, snapshot.getMin(), durations);
+				break;
+			case MAX:
+				appendStatistic(point, field, snapshot.getMax(), durations);
+				break;
+			case MEAN:
+				appendStatistic(point, field, snapshot.getMean(), durations);
+				break;
+			case MEDIAN:
+				appendStatistic(point, field, snapshot.getMedian(), durations);
+				break;
+			case STD_DEV:
+				appendStatistic(point, field, snapshot.getStdDev(), durations);
+				break;
+			case P75:
+				appendStatistic(point, field, snapshot.get75thPercentile(), durations);
+				break;
+			case P95:
+				appendStatistic(point, field, snapshot.get95thPercentile(), durations);
+				break;
+			case P98:
+				appendStatistic(point, field, snapshot.get98thPercentile(), durations);
+				break;
+			case P99:
+				appendStatistic(point, field, snapshot.get99thPercentile(), durations);
+				break;
+			case P999:
+				appendStatistic(point, field, snapshot.get999thPercentile(), durations);
+				break;
+			default:
+				break;
 			}
+		}
+	}
+
+	private void appendStatistic(LineProtocolEncoder.PointWriter point, MetricField field, long value, boolean duration) {
+		point.field(field.getName(), duration ? Math.round(convertDuration(value)) : value);
+	}
+
+	private void appendStatistic(LineProtocolEncoder.PointWriter point, MetricField field, double value, boolean duration) {
+		point.field(field.getName(), duration ? convertDuration(value) : value);
+	}
+
+	/**
+	 * Partitions the histograms or timers into chunks, each encoded by a worker into its own buffer, and appends the buffers in order.
+	 * Field selection and change tracking happen on the calling thread.
+	 */
+	private void appendSnapshotsInParallel(LineProtocolBuffer buffer, MetricIndex.Section section, long timestamp) {
+		// when streaming, the worker buffers only hold a bounded number of metrics at a time
+		int round = batchBytes > 0 ? workers.length * STREAMING_METRICS_PER_WORKER : Integer.MAX_VALUE;
+		int next = 0;
+		try {
+			while (next < section.size()) {
+				// selected round by round, so that a write only confirms the change tracking of metrics whose points it contains
+				snapshotCount = 0;
+				for (; next < section.size() && snapshotCount < round; next++) {
+					Metric metric = section.metric(next);
+					boolean reported = metric instanceof Timer
+							? isReported(section.name(next), (Timer) metric)
+							: isReported(section.name(next), (Histogram) metric);
+					if (reported) {
+						addSnapshotMetric(section, next);
+					}
+				}
+				int count = snapshotCount;
+				for (int i = 0; i < workers.length; i++) {
+					workers[i].assign(count * i / workers.length, count * (i + 1) / workers.length, timestamp);
+				}
+				List<Future<Void>> futures;
+				try {
+					futures = pool.invokeAll(Arrays.<Callable<Void>> asList(workers));
+				} catch (RejectedExecutionException e) {
+					// stopped while reporting
+					appendSnapshots(buffer, 0, count, timestamp);
+					writeFullBatch();
+					continue;
+				}
+				for (int i = 0; i < workers.length; i++) {
+					try {
+						futures.get(i).get();
+						buffer.append(workers[i].buffer);
+						points += workers[i].points;
+						invalidPoints += workers[i].invalidPoints;
+					} catch (ExecutionException e) {
+						// the points of the other workers are written, the metrics of this one are reported again next time
+						LOG.info("Failed to collect snapshots", e.getCause());
+						untrack(workers[i].from, workers[i].to);
+					} catch (InterruptedException e) {
+						// not thrown, all tasks are done
+						untrack(workers[i].from, workers[i].to);
+						Thread.currentThread().interrupt();
+					} finally {
+						workers[i].buffer.clear();
+					}
+				}
+				writeFullBatch();
+			}
+		} finally {
+			Arrays.fill(snapshotMetrics, 0, snapshotCount, null);
+			snapshotCount = 0;
+		}
+	}
+
+	/**
+	 * Encodes the given range of the selected histograms and timers on the calling thread.
+	 */
+	private void appendSnapshots(LineProtocolBuffer buffer, int from, int to, long timestamp) {
+		for (int i = from; i < to; i++) {
+			boolean written;
+			if (snapshotMetrics[i] instanceof Timer) {
+				written = appendTimer(encoder, buffer, snapshotNames[i], snapshotSeriesKeys[i], (Timer) snapshotMetrics[i], timestamp);
+			} else {
+				written = appendHistogram(encoder, buffer, snapshotNames[i], snapshotSeriesKeys[i], (Histogram) snapshotMetrics[i],
+						timestamp);
+			}
+			// counted without writing full batches, which would confirm the change tracking of the rest of the range
+			if (written) {
+				points++;
+			} else {
+				invalidPoints++;
+			}
+		}
+	}
+
+	/**
+	 * Reverts the change tracking of the given range of the selected histograms and timers, whose points were not appended.
+	 */
+	private void untrack(int from, int to) {
+		if (changeTracker == null) {
+			return;
+		}
+		for (int i = from; i < to; i++) {
+			changeTracker.rollback(snapshotNames[i]);
+		}
+	}
+
+	private void addSnapshotMetric(MetricIndex.Section section, int position) {
+		if (snapshotCount == snapshotMetrics.length) {
+			int capacity = Math.max(MIN_PARALLEL_METRICS, snapshotCount * 2);
+			snapshotNames = Arrays.copyOf(snapshotNames, capacity);
+			snapshotSeriesKeys = Arrays.copyOf(snapshotSeriesKeys, capacity);
+			snapshotMetrics = Arrays.copyOf(snapshotMetrics, capacity);
+		}
+		snapshotNames[snapshotCount] = section.name(position);
+		snapshotSeriesKeys[snapshotCount] = section.seriesKey(position);
+		snapshotMetrics[snapshotCount++] = section.metric(position);
+	}
 
-			Map<String, Object> fields = new HashMap<>();
-			fields.put("count", timer.getCount());
-			fields.put("mean-rate", convertRate(timer.getMeanRate()));
-			fields.put("1-min-rate", convertRate(timer.getOneMinuteRate()));
-			fields.put("5-min-rate", convertRate(timer.getFiveMinuteRate()));
-			fields.put("15-min-rate", convertRate(timer.getFifteenMinuteRate()));
-			fields.put("75-percentile", snapshot.get75thPercentile());
-			fields.put("95-percentile", snapshot.get95thPercentile());
-			fields.put("98-percentile", snapshot.get98thPercentile());
-			fields.put("99-percentile", snapshot.get99thPercentile());
-			fields.put("999-percentile", snapshot.get999thPercentile());
-			fields.put("max", snapshot.getMax());
-			fields.put("mean", snapshot.getMean());
-			fields.put("median", snapshot.getMedian());
-			fields.put("min", snapshot.getMin());
-			fields.put("std-dev", snapshot.getStdDev());
-
-			encoder.encodeInto(buffer, measurement, fields, tags, timestamp);
+	private boolean changed(String measurement, long fingerprint) {
+		if (changeTracker == null || changeTracker.changed(measurement, fingerprint)) {
+			return true;
+		}
+		unchangedPoints++;
+		return false;
+	}
+
+	/**
+	 * Fingerprint of the value and its minimum, maximum and mean, but not the number of samples, which grows while a point is skipped.
+	 */
+	private long aggregateFingerprint(Object value, int slot) {
+		long fingerprint = fingerprint(value);
+		fingerprint = 31 * fingerprint + Double.doubleToLongBits(aggregator.min(slot));
+		fingerprint = 31 * fingerprint + Double.doubleToLongBits(aggregator.max(slot));
+		return 31 * fingerprint + Double.doubleToLongBits(aggregator.mean(slot));
+	}
+
+	private static long fingerprint(Object value) {
+		if (value instanceof Double || value instanceof Float) {
+			return Double.doubleToLongBits(((Number) value).doubleValue());
+		} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return ((Number) value).longValue();
+		} else if (value instanceof Boolean) {
+			return (Boolean) value ? 1 : 0;
+		}
+		// a changed value with the same hash code is reported with the next heartbeat
+		return value != null ? value.hashCode() : 0;
+	}
+
+	private class SnapshotWorker implements Callable<Void> {
+		private final LineProtocolEncoder encoder;
+		private final LineProtocolBuffer buffer;
+		private int from;
+		private int to;
+		private long timestamp;
+		private int points;
+		private int invalidPoints;
+
+		SnapshotWorker(LineProtocolEncoder encoder, LineProtocolBuffer buffer) {
+			this.encoder = encoder;
+			this.buffer = buffer;
+		}
+
+		void assign(int from, int to, long timestamp) {
+			this.from = from;
+			this.to = to;
+			this.timestamp = timestamp;
+		}
+
+		@Override
+		public Void call() {
+			buffer.clear();
+			points = 0;
+			invalidPoints = 0;
+			for (int i = from; i < to; i++) {
+				boolean written;
+				if (snapshotMetrics[i] instanceof Timer) {
+					written = appendTimer(encoder, buffer, snapshotNames[i], snapshotSeriesKeys[i], (Timer) snapshotMetrics[i], timestamp);
+				} else {
+					written = appendHistogram(encoder, buffer, snapshotNames[i], snapshotSeriesKeys[i], (Histogram) snapshotMetrics[i],
+							timestamp);
+				}
+				if (written) {
+					points++;
+				} else {
+					invalidPoints++;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static class ReporterThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+		private final int pool = POOL_COUNTER.incrementAndGet();
+
+		private final AtomicInteger threadCounter = new AtomicInteger();
+
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool forkJoinPool) {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+			thread.setName("influxdb-reporter-" + pool + "-" + threadCounter.incrementAndGet());
+			return thread;
+		}
+	}
+
+	private class RemovalListener extends MetricRegistryListener.Base {
+		@Override
+		public void onGaugeRemoved(String name) {
+			evict(name);
+		}
+
+		@Override
+		public void onCounterRemoved(String name) {
+			evict(name);
+		}
+
+		@Override
+		public void onHistogramRemoved(String name) {
+			evict(name);
+		}
+
+		@Override
+		public void onMeterRemoved(String name) {
+			evict(name);
+		}
+
+		@Override
+		public void onTimerRemoved(String name) {
+			evict(name);
+		}
+
+		private void evict(String name) {
+			if (seriesKeyCache != null) {
+				seriesKeyCache.evict(name);
+			}
+			if (nameParser != null) {
+				nameParser.evict(name);
+			}
+			fieldSelection.evict(name);
 		}
 	}
 }
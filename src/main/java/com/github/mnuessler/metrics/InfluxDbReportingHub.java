@@ -0,0 +1,400 @@
+package com.github.mnuessler.metrics;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.mnuessler.influxdb.FlushableInfluxDbClient;
+import com.github.mnuessler.influxdb.InfluxDbClient;
+import com.github.mnuessler.influxdb.LineProtocolBuffer;
+import com.github.mnuessler.influxdb.Precision;
+import com.github.mnuessler.influxdb.SegmentPool;
+
+/**
+ * Reports many registries on a single scheduler thread and coalesces their points into one write per database and retention policy,
+ * e.g. in JVMs hosting many tenants with a registry each. Reporters are configured as usual, with their own tags, database and other
+ * options, but are built by {@link #register(InfluxDbReporter.Builder)} and never started themselves. On every report of the hub, all
+ * reporters report in the order they were registered into buffers per database and retention policy. A buffer is written with the
+ * shared client as soon as it holds a full batch, and the rest at the end of the report. As the client writes all points with the same
+ * precision, all reporters have to use the precision of the hub.
+ */
+public class InfluxDbReportingHub implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(InfluxDbReportingHub.class);
+
+	private static final AtomicInteger HUB_COUNTER = new AtomicInteger();
+
+	static final int DEFAULT_BATCH_BYTES = 1024 * 1024;
+
+	static final String DEFAULT_SELF_METRICS_PREFIX = "influxdb.hub";
+
+	public static Builder forClient(@Nonnull final InfluxDbClient client) {
+		return new Builder(client);
+	}
+
+	public static class Builder {
+
+		private final InfluxDbClient client;
+		private boolean directBuffer;
+		private int maxPooledSegments = InfluxDbReporter.DEFAULT_MAX_POOLED_SEGMENTS;
+		private int idleReports = InfluxDbReporter.DEFAULT_IDLE_REPORTS;
+		private long flushTimeoutMillis = InfluxDbReporter.DEFAULT_FLUSH_TIMEOUT_MILLIS;
+		private int batchBytes = DEFAULT_BATCH_BYTES;
+		private Precision precision = Precision.MILLISECONDS;
+		private String defaultRetentionPolicy = InfluxDbReporter.DEFAULT_RETENTION_POLICY;
+		private MetricRegistry selfMetricsRegistry;
+		private String selfMetricsPrefix = DEFAULT_SELF_METRICS_PREFIX;
+
+		private Builder(@Nonnull final InfluxDbClient client) {
+			this.client = client;
+		}
+
+		/**
+		 * Collect the points of all reporters in direct buffers, see {@link InfluxDbReporter.Builder#withDirectBuffer(boolean)}.
+		 */
+		public Builder withDirectBuffer(final boolean directBuffer) {
+			this.directBuffer = directBuffer;
+			return this;
+		}
+
+		/**
+		 * See {@link InfluxDbReporter.Builder#withBufferPool(int, int)}.
+		 */
+		public Builder withBufferPool(final int maxSegments, final int idleReports) {
+			if (maxSegments < 0 || idleReports < 1) {
+				throw new IllegalArgumentException("Invalid buffer pool: " + maxSegments + " segments, " + idleReports + " reports");
+			}
+			this.maxPooledSegments = maxSegments;
+			this.idleReports = idleReports;
+			return this;
+		}
+
+		/**
+		 * Maximum time {@link InfluxDbReportingHub#stop()} waits for a {@link FlushableInfluxDbClient} to send queued payloads.
+		 */
+		public Builder withFlushTimeout(final long timeout, @Nonnull final TimeUnit unit) {
+			this.flushTimeoutMillis = unit.toMillis(timeout);
+			return this;
+		}
+
+		/**
+		 * Size in bytes at which the points collected for a database and retention policy are written, defaults to
+		 * {@value #DEFAULT_BATCH_BYTES}. Payloads of at least this size, e.g. the batches of a reporter
+		 * {@link InfluxDbReporter.Builder#withStreaming(int) streaming} its points, are written without collecting them.
+		 */
+		public Builder withBatchSize(final int batchBytes) {
+			if (batchBytes < 1) {
+				throw new IllegalArgumentException("Batch size must be positive: " + batchBytes);
+			}
+			this.batchBytes = batchBytes;
+			return this;
+		}
+
+		/**
+		 * Precision of the client, defaults to milliseconds. Only reporters with the same precision can be registered.
+		 */
+		public Builder withPrecision(@Nonnull final Precision precision) {
+			this.precision = precision;
+			return this;
+		}
+
+		/**
+		 * Name of the default retention policy of the server, defaults to {@code default} like the retention policy of reporters. Points
+		 * written without or with an empty retention policy are written to this one, in the same batches as the points naming it.
+		 */
+		public Builder withDefaultRetentionPolicy(@Nonnull final String retentionPolicy) {
+			this.defaultRetentionPolicy = retentionPolicy;
+			return this;
+		}
+
+		/**
+		 * Publishes metrics about the writes of the hub into the given registry: write time, bytes per report and failed writes. The
+		 * self metrics of registered reporters only describe collecting their points, as the hub writes them.
+		 */
+		public Builder withSelfMetrics(@Nonnull final MetricRegistry registry) {
+			return withSelfMetrics(registry, DEFAULT_SELF_METRICS_PREFIX);
+		}
+
+		public Builder withSelfMetrics(@Nonnull final MetricRegistry registry, @Nonnull final String prefix) {
+			this.selfMetricsRegistry = registry;
+			this.selfMetricsPrefix = prefix;
+			return this;
+		}
+
+		public InfluxDbReportingHub build() {
+			SegmentPool segmentPool = new SegmentPool(SegmentPool.DEFAULT_SEGMENT_SIZE, directBuffer, maxPooledSegments, idleReports);
+			HubMetrics selfMetrics = selfMetricsRegistry != null ? new HubMetrics(selfMetricsRegistry, selfMetricsPrefix) : null;
+			return new InfluxDbReportingHub(client, segmentPool, flushTimeoutMillis, batchBytes, precision, defaultRetentionPolicy,
+					selfMetrics);
+		}
+	}
+
+	private final InfluxDbClient client;
+
+	private final SegmentPool segmentPool;
+
+	private final long flushTimeoutMillis;
+
+	private final int batchBytes;
+
+	private final Precision precision;
+
+	private final String defaultRetentionPolicy;
+
+	private final HubMetrics selfMetrics;
+
+	private final CollectingClient collector = new CollectingClient();
+
+	private final List<InfluxDbReporter> reporters = new CopyOnWriteArrayList<>();
+
+	private final ScheduledExecutorService executor;
+
+	private volatile long periodMillis;
+
+	private boolean started;
+
+	private InfluxDbReportingHub(InfluxDbClient client, SegmentPool segmentPool, long flushTimeoutMillis, int batchBytes,
+			Precision precision, String defaultRetentionPolicy, HubMetrics selfMetrics) {
+		this.client = client;
+		this.segmentPool = segmentPool;
+		this.flushTimeoutMillis = flushTimeoutMillis;
+		this.batchBytes = batchBytes;
+		this.precision = precision;
+		this.defaultRetentionPolicy = defaultRetentionPolicy;
+		this.selfMetrics = selfMetrics;
+		final int id = HUB_COUNTER.incrementAndGet();
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "influxdb-reporting-hub-" + id);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Builds a reporter whose points are written by this hub and reports it with every report of the hub, until it is unregistered.
+	 * The client of the builder is replaced.
+	 *
+	 * @throws IllegalArgumentException if the precision of the reporter differs from the precision of the hub
+	 */
+	public InfluxDbReporter register(@Nonnull final InfluxDbReporter.Builder builder) {
+		InfluxDbReporter reporter = builder.withInfluxDbClient(collector).build();
+		if (reporter.getPrecision() != precision) {
+			reporter.stop();
+			throw new IllegalArgumentException("Precision " + reporter.getPrecision() + " of the reporter differs from the precision "
+					+ precision + " of the hub");
+		}
+		reporter.setPeriod(periodMillis, TimeUnit.MILLISECONDS);
+		reporters.add(reporter);
+		return reporter;
+	}
+
+	/**
+	 * Stops reporting the reporter and stops it.
+	 */
+	public void unregister(@Nonnull final InfluxDbReporter reporter) {
+		if (reporters.remove(reporter)) {
+			reporter.stop();
+		}
+	}
+
+	public int size() {
+		return reporters.size();
+	}
+
+	/**
+	 * @throws IllegalStateException if the hub was already started
+	 */
+	public synchronized void start(final long period, @Nonnull final TimeUnit unit) {
+		if (started) {
+			throw new IllegalStateException("Hub already started");
+		}
+		started = true;
+		this.periodMillis = unit.toMillis(period);
+		for (InfluxDbReporter reporter : reporters) {
+			reporter.setPeriod(period, unit);
+		}
+		executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					report();
+				} catch (RuntimeException e) {
+					LOG.error("Failed to report metrics", e);
+				}
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Reports all registered reporters and writes their points, one write per database and retention policy unless the points exceed
+	 * the batch size.
+	 */
+	public synchronized void report() {
+		for (InfluxDbReporter reporter : reporters) {
+			try {
+				reporter.report();
+			} catch (RuntimeException e) {
+				// one broken registry must not keep the others from being reported
+				LOG.info("Failed to collect metrics", e);
+			}
+		}
+		collector.writeAll();
+		segmentPool.trim();
+		if (selfMetrics != null) {
+			selfMetrics.bytes.update(collector.takeWrittenBytes());
+		}
+	}
+
+	/**
+	 * Stops the scheduler and all registered reporters, and waits for a {@link FlushableInfluxDbClient} to send queued payloads. The
+	 * client is not closed.
+	 */
+	public void stop() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		for (InfluxDbReporter reporter : reporters) {
+			reporter.stop();
+		}
+		reporters.clear();
+		if (client instanceof FlushableInfluxDbClient) {
+			flush((FlushableInfluxDbClient) client);
+		}
+	}
+
+	@Override
+	public void close() {
+		stop();
+	}
+
+	private void flush(FlushableInfluxDbClient asyncClient) {
+		try {
+			if (!asyncClient.flush(flushTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				LOG.info("Timed out after {} ms waiting for {} queued payloads to be sent to InfluxDB", flushTimeoutMillis,
+						asyncClient.getQueueSize());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Collects the payloads of the reporters per database and retention policy, and writes them in batches.
+	 */
+	final class CollectingClient implements InfluxDbClient {
+		private final Map<List<String>, LineProtocolBuffer> buffers = new LinkedHashMap<>();
+		private long writtenBytes;
+
+		@Override
+		public void write(@Nonnull CharSequence payload, @Nonnull String database, @Nullable String retentionPolicy) {
+			write(LineProtocolBuffer.wrap(payload.toString().getBytes(CHARSET)), database, retentionPolicy);
+		}
+
+		@Override
+		public synchronized void write(@Nonnull LineProtocolBuffer payload, @Nonnull String database, @Nullable String retentionPolicy) {
+			List<String> destination = Arrays.asList(database, normalize(retentionPolicy));
+			LineProtocolBuffer buffer = buffers.get(destination);
+			if (buffer == null) {
+				buffer = new LineProtocolBuffer(segmentPool);
+				buffers.put(destination, buffer);
+			}
+			if (payload.length() >= batchBytes) {
+				// a full batch on its own, written after the points collected before to keep their order
+				send(buffer, destination);
+				buffer.clear();
+				send(payload, destination);
+				return;
+			}
+			buffer.append(payload);
+			if (buffer.length() >= batchBytes) {
+				send(buffer, destination);
+				buffer.clear();
+			}
+		}
+
+		synchronized void writeAll() {
+			for (Map.Entry<List<String>, LineProtocolBuffer> entry : buffers.entrySet()) {
+				send(entry.getValue(), entry.getKey());
+				entry.getValue().clear();
+			}
+		}
+
+		synchronized long takeWrittenBytes() {
+			long bytes = writtenBytes;
+			writtenBytes = 0;
+			return bytes;
+		}
+
+		/**
+		 * Maps a missing retention policy to the default one, so that their points end up in the same batches.
+		 */
+		private String normalize(String retentionPolicy) {
+			return retentionPolicy == null || retentionPolicy.isEmpty() ? defaultRetentionPolicy : retentionPolicy;
+		}
+
+		private void send(LineProtocolBuffer payload, List<String> destination) {
+			if (payload.length() == 0) {
+				return;
+			}
+			long writeStart = System.nanoTime();
+			try {
+				client.write(payload, destination.get(0), destination.get(1));
+			} catch (Exception e) {
+				LOG.info("Failed to send metrics to InfluxDB", e);
+				if (selfMetrics != null) {
+					selfMetrics.writeFailures.inc();
+				}
+			} finally {
+				writtenBytes += payload.length();
+				if (selfMetrics != null) {
+					selfMetrics.writeTime.update(System.nanoTime() - writeStart, TimeUnit.NANOSECONDS);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Metrics describing the writes of the hub, the bytes are updated once per report.
+	 */
+	private static final class HubMetrics {
+
+		final Timer writeTime;
+
+		final Histogram bytes;
+
+		final Counter writeFailures;
+
+		HubMetrics(MetricRegistry registry, String prefix) {
+			this.writeTime = registry.timer(MetricRegistry.name(prefix, "write"));
+			this.bytes = registry.histogram(MetricRegistry.name(prefix, "bytes"));
+			this.writeFailures = registry.counter(MetricRegistry.name(prefix, "write-failures"));
+		}
+	}
+}
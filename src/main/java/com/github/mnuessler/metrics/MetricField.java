@@ -0,0 +1,47 @@
+package com.github.mnuessler.metrics;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Statistics reported for histograms, meters and timers, see {@link InfluxDbReporter.Builder#withHistogramFields(MetricField...)}.
+ */
+public enum MetricField {
+	COUNT("count"),
+	MIN("min"),
+	MAX("max"),
+	MEAN("mean"),
+	MEDIAN("median"),
+	STD_DEV("std-dev"),
+	P75("75-percentile"),
+	P95("95-percentile"),
+	P98("98-percentile"),
+	P99("99-percentile"),
+	P999("999-percentile"),
+	MEAN_RATE("mean-rate"),
+	M1_RATE("1-min-rate"),
+	M5_RATE("5-min-rate"),
+	M15_RATE("15-min-rate");
+
+	static final Set<MetricField> HISTOGRAM_FIELDS = EnumSet.range(COUNT, P999);
+
+	static final Set<MetricField> METER_FIELDS = EnumSet.of(COUNT, MEAN_RATE, M1_RATE, M5_RATE, M15_RATE);
+
+	static final Set<MetricField> TIMER_FIELDS = EnumSet.allOf(MetricField.class);
+
+	// fields computed from a snapshot
+	static final Set<MetricField> SNAPSHOT_FIELDS = EnumSet.range(MIN, P999);
+
+	private final String name;
+
+	MetricField(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Name of the field in line protocol.
+	 */
+	public String getName() {
+		return name;
+	}
+}
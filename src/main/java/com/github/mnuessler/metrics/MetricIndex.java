@@ -0,0 +1,286 @@
+package com.github.mnuessler.metrics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+import com.github.mnuessler.influxdb.LineProtocolEncoder;
+
+/**
+ * Index of the metrics of a registry accepted by a filter, kept current by listening to the registry, so that reports neither copy
+ * the registry into sorted maps nor evaluate the filter again. The filter is evaluated once, when a metric is added. Each kind of
+ * metric is kept in flat arrays of names, metrics and encoded series keys, which a reporter copies into its {@link View} before each
+ * report, but only if metrics were added or removed since. Metrics are kept in the order they were added; a removed metric is
+ * replaced by the last one of its kind. Instances are thread-safe.
+ */
+final class MetricIndex implements MetricRegistryListener {
+
+	private final MetricFilter filter;
+
+	private final MetricNameParser nameParser;
+
+	private final SortedMap<String, String> tags;
+
+	private final LineProtocolEncoder encoder = new LineProtocolEncoder();
+
+	private final Section gauges = new Section();
+
+	private final Section counters = new Section();
+
+	private final Section histograms = new Section();
+
+	private final Section meters = new Section();
+
+	private final Section timers = new Section();
+
+	// position of each indexed metric in its section
+	private final Map<String, Integer> positions = new HashMap<>();
+
+	private long version;
+
+	/**
+	 * @param nameParser splits names into measurement and tags for the series keys, or {@code null} to use the name as measurement
+	 * @param tags global tags, used if there is no name parser
+	 */
+	MetricIndex(@Nonnull final MetricFilter filter, @Nullable final MetricNameParser nameParser,
+			@Nonnull final SortedMap<String, String> tags) {
+		this.filter = filter;
+		this.nameParser = nameParser;
+		this.tags = tags;
+	}
+
+	@Override
+	public synchronized void onGaugeAdded(String name, Gauge<?> gauge) {
+		add(gauges, name, gauge);
+	}
+
+	@Override
+	public synchronized void onGaugeRemoved(String name) {
+		remove(gauges, name);
+	}
+
+	@Override
+	public synchronized void onCounterAdded(String name, Counter counter) {
+		add(counters, name, counter);
+	}
+
+	@Override
+	public synchronized void onCounterRemoved(String name) {
+		remove(counters, name);
+	}
+
+	@Override
+	public synchronized void onHistogramAdded(String name, Histogram histogram) {
+		add(histograms, name, histogram);
+	}
+
+	@Override
+	public synchronized void onHistogramRemoved(String name) {
+		remove(histograms, name);
+	}
+
+	@Override
+	public synchronized void onMeterAdded(String name, Meter meter) {
+		add(meters, name, meter);
+	}
+
+	@Override
+	public synchronized void onMeterRemoved(String name) {
+		remove(meters, name);
+	}
+
+	@Override
+	public synchronized void onTimerAdded(String name, Timer timer) {
+		add(timers, name, timer);
+	}
+
+	@Override
+	public synchronized void onTimerRemoved(String name) {
+		remove(timers, name);
+	}
+
+	/**
+	 * Copies the indexed metrics into the view, unless it is up to date.
+	 */
+	synchronized void update(@Nonnull final View view) {
+		if (view.version == version) {
+			return;
+		}
+		view.gauges.copyFrom(gauges);
+		view.counters.copyFrom(counters);
+		view.histograms.copyFrom(histograms);
+		view.meters.copyFrom(meters);
+		view.timers.copyFrom(timers);
+		view.version = version;
+	}
+
+	synchronized int size() {
+		return positions.size();
+	}
+
+	private void add(Section section, String name, Metric metric) {
+		if (!filter.matches(name, metric)) {
+			return;
+		}
+		Integer position = positions.get(name);
+		if (position != null) {
+			section.set(position, name, metric, seriesKey(name));
+		} else {
+			positions.put(name, section.size());
+			section.add(name, metric, seriesKey(name));
+		}
+		version++;
+	}
+
+	private void remove(Section section, String name) {
+		Integer position = positions.remove(name);
+		if (position == null) {
+			return;
+		}
+		String moved = section.remove(position);
+		if (moved != null) {
+			positions.put(moved, position);
+		}
+		version++;
+	}
+
+	private byte[] seriesKey(String name) {
+		if (nameParser == null) {
+			return encoder.encodeSeriesKey(name, tags);
+		}
+		MetricNameParser.ParsedName parsedName = nameParser.parse(name);
+		return encoder.encodeSeriesKey(parsedName.measurement, parsedName.tags);
+	}
+
+	/**
+	 * Metrics of one kind with their names and encoded series keys, the latter {@code null} if not known. Instances are not
+	 * thread-safe.
+	 */
+	static final class Section {
+		private static final int INITIAL_CAPACITY = 16;
+
+		private String[] names = new String[INITIAL_CAPACITY];
+
+		private Metric[] metrics = new Metric[INITIAL_CAPACITY];
+
+		private byte[][] seriesKeys = new byte[INITIAL_CAPACITY][];
+
+		private int size;
+
+		int size() {
+			return size;
+		}
+
+		String name(int position) {
+			return names[position];
+		}
+
+		Metric metric(int position) {
+			return metrics[position];
+		}
+
+		@Nullable
+		byte[] seriesKey(int position) {
+			return seriesKeys[position];
+		}
+
+		void add(@Nonnull String name, @Nonnull Metric metric, @Nullable byte[] seriesKey) {
+			if (size == names.length) {
+				grow(size * 2);
+			}
+			set(size++, name, metric, seriesKey);
+		}
+
+		/**
+		 * Removes all metrics, without releasing the arrays.
+		 */
+		void clear() {
+			Arrays.fill(names, 0, size, null);
+			Arrays.fill(metrics, 0, size, null);
+			Arrays.fill(seriesKeys, 0, size, null);
+			size = 0;
+		}
+
+		private void set(int position, String name, Metric metric, byte[] seriesKey) {
+			names[position] = name;
+			metrics[position] = metric;
+			seriesKeys[position] = seriesKey;
+		}
+
+		/**
+		 * Removes the metric at the position by moving the last metric there, and returns the name of the moved metric, or {@code null}
+		 * if the removed metric was the last one.
+		 */
+		private String remove(int position) {
+			int last = --size;
+			String moved = null;
+			if (position != last) {
+				moved = names[last];
+				set(position, moved, metrics[last], seriesKeys[last]);
+			}
+			set(last, null, null, null);
+			return moved;
+		}
+
+		private void copyFrom(Section other) {
+			if (names.length < other.size) {
+				grow(other.names.length);
+			}
+			System.arraycopy(other.names, 0, names, 0, other.size);
+			System.arraycopy(other.metrics, 0, metrics, 0, other.size);
+			System.arraycopy(other.seriesKeys, 0, seriesKeys, 0, other.size);
+			if (other.size < size) {
+				// do not keep removed metrics reachable
+				Arrays.fill(names, other.size, size, null);
+				Arrays.fill(metrics, other.size, size, null);
+				Arrays.fill(seriesKeys, other.size, size, null);
+			}
+			size = other.size;
+		}
+
+		private void grow(int capacity) {
+			names = Arrays.copyOf(names, capacity);
+			metrics = Arrays.copyOf(metrics, capacity);
+			seriesKeys = Arrays.copyOf(seriesKeys, capacity);
+		}
+	}
+
+	/**
+	 * The metrics of a report, either copied from an index or collected from the sorted maps of a registry. Instances are not
+	 * thread-safe.
+	 */
+	static final class View {
+		final Section gauges = new Section();
+
+		final Section counters = new Section();
+
+		final Section histograms = new Section();
+
+		final Section meters = new Section();
+
+		final Section timers = new Section();
+
+		private long version = -1;
+
+		void clear() {
+			gauges.clear();
+			counters.clear();
+			histograms.clear();
+			meters.clear();
+			timers.clear();
+			version = -1;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.github.mnuessler.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Splits metric names into measurement and tags using the first {@link MetricNameTemplate} whose filter matches, or the template
+ * without filter if none does. The tags of a name are the global tags, overridden by the tags of the template and the tags extracted
+ * from the name. Parsed names are cached until evicted, so a name is only split the first time it is reported. Instances are
+ * thread-safe.
+ */
+final class MetricNameParser {
+
+	private final List<MetricNameTemplate> templates = new ArrayList<>();
+
+	private final SortedMap<String, String> tags;
+
+	private final ConcurrentMap<String, ParsedName> parsedNames = new ConcurrentHashMap<>();
+
+	/**
+	 * @param tags global tags, not copied, must not change afterwards
+	 */
+	MetricNameParser(@Nonnull final List<MetricNameTemplate> templates, @Nonnull final SortedMap<String, String> tags) {
+		MetricNameTemplate defaultTemplate = null;
+		for (MetricNameTemplate template : templates) {
+			if (template.hasFilter()) {
+				this.templates.add(template);
+			} else if (defaultTemplate == null) {
+				defaultTemplate = template;
+			} else {
+				throw new IllegalArgumentException("At most one template without filter allowed");
+			}
+		}
+		if (defaultTemplate != null) {
+			this.templates.add(defaultTemplate);
+		}
+		this.tags = tags;
+	}
+
+	@Nonnull
+	ParsedName parse(@Nonnull final String name) {
+		ParsedName parsedName = parsedNames.get(name);
+		if (parsedName == null) {
+			parsedName = doParse(name);
+			parsedNames.put(name, parsedName);
+		}
+		return parsedName;
+	}
+
+	private ParsedName doParse(String name) {
+		String[] parts = MetricNameTemplate.split(name);
+		for (MetricNameTemplate template : templates) {
+			if (template.matches(parts)) {
+				SortedMap<String, String> nameTags = new TreeMap<>(tags);
+				String measurement = template.apply(parts, nameTags);
+				return new ParsedName(measurement != null ? measurement : name, Collections.unmodifiableSortedMap(nameTags));
+			}
+		}
+		return new ParsedName(name, tags);
+	}
+
+	void evict(@Nonnull final String name) {
+		parsedNames.remove(name);
+	}
+
+	void clear() {
+		parsedNames.clear();
+	}
+
+	int size() {
+		return parsedNames.size();
+	}
+
+	static final class ParsedName {
+		final String measurement;
+
+		// the same instance for every point of the metric, which lets the series key cache skip comparing the tags
+		final SortedMap<String, String> tags;
+
+		private ParsedName(String measurement, SortedMap<String, String> tags) {
+			this.measurement = measurement;
+			this.tags = tags;
+		}
+	}
+}
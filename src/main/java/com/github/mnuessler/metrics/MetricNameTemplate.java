@@ -0,0 +1,161 @@
+package com.github.mnuessler.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Graphite-style template splitting a dotted metric name into a measurement and tags, e.g. {@code service.endpoint.method.measurement*}
+ * turns {@code users.list.GET.latency.max} into measurement {@code latency.max} with tags {@code service=users,endpoint=list,method=GET}.
+ * <p>
+ * A template is written as {@code [filter] template [tag=value,...]}. Each part of the template names what the part of the metric name
+ * at the same position becomes: {@code measurement}, a tag key, or nothing if the part is empty. A trailing {@code measurement*} takes
+ * all remaining parts. Parts of the name selected for the measurement, or repeatedly for the same tag, are joined with a dot. The
+ * optional filter restricts the template to names matching the dotted pattern, where {@code *} matches any single part, and the
+ * optional tags are added to every name the template is applied to.
+ */
+final class MetricNameTemplate {
+
+	static final String MEASUREMENT = "measurement";
+
+	private static final String WILDCARD = "*";
+
+	private final String[] filter;
+
+	private final String[] parts;
+
+	private final boolean greedyMeasurement;
+
+	private final SortedMap<String, String> tags;
+
+	private MetricNameTemplate(String[] filter, String[] parts, boolean greedyMeasurement, SortedMap<String, String> tags) {
+		this.filter = filter;
+		this.parts = parts;
+		this.greedyMeasurement = greedyMeasurement;
+		this.tags = tags;
+	}
+
+	static MetricNameTemplate parse(@Nonnull final String definition) {
+		String[] sections = definition.trim().split("\\s+");
+		String filter = null;
+		String template;
+		String tags = null;
+		if (sections.length == 1) {
+			template = sections[0];
+		} else if (sections.length == 2 && sections[1].contains("=")) {
+			template = sections[0];
+			tags = sections[1];
+		} else if (sections.length == 2) {
+			filter = sections[0];
+			template = sections[1];
+		} else if (sections.length == 3) {
+			filter = sections[0];
+			template = sections[1];
+			tags = sections[2];
+		} else {
+			throw new IllegalArgumentException("Invalid template: '" + definition + "'");
+		}
+
+		String[] parts = split(template);
+		boolean greedyMeasurement = false;
+		for (int i = 0; i < parts.length; i++) {
+			if (parts[i].endsWith(WILDCARD)) {
+				if (i != parts.length - 1 || !parts[i].equals(MEASUREMENT + WILDCARD)) {
+					throw new IllegalArgumentException("Only a trailing 'measurement*' may take several parts: '" + definition + "'");
+				}
+				parts[i] = MEASUREMENT;
+				greedyMeasurement = true;
+			}
+		}
+		return new MetricNameTemplate(filter != null ? split(filter) : null, parts, greedyMeasurement, parseTags(tags, definition));
+	}
+
+	private static SortedMap<String, String> parseTags(String tags, String definition) {
+		SortedMap<String, String> result = new TreeMap<>();
+		if (tags == null) {
+			return result;
+		}
+		for (String tag : tags.split(",")) {
+			int separator = tag.indexOf('=');
+			if (separator < 1 || separator == tag.length() - 1) {
+				throw new IllegalArgumentException("Invalid tag '" + tag + "' in template: '" + definition + "'");
+			}
+			result.put(tag.substring(0, separator), tag.substring(separator + 1));
+		}
+		return result;
+	}
+
+	boolean hasFilter() {
+		return filter != null;
+	}
+
+	/**
+	 * Returns whether the name starts with parts matching the filter; a template without filter matches every name.
+	 */
+	boolean matches(@Nonnull final String[] name) {
+		if (filter == null) {
+			return true;
+		}
+		if (name.length < filter.length) {
+			return false;
+		}
+		for (int i = 0; i < filter.length; i++) {
+			if (!filter[i].equals(WILDCARD) && !filter[i].equals(name[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Applies the template to a name split into its parts, putting the extracted tags into the given map and returning the measurement,
+	 * or {@code null} if no part was selected for the measurement.
+	 */
+	@Nullable
+	String apply(@Nonnull final String[] name, @Nonnull final Map<String, String> tags) {
+		tags.putAll(this.tags);
+		StringBuilder measurement = new StringBuilder();
+		Map<String, String> extracted = new TreeMap<>();
+		for (int i = 0; i < name.length; i++) {
+			if (i >= parts.length && !greedyMeasurement) {
+				break;
+			}
+			String part = i < parts.length ? parts[i] : MEASUREMENT;
+			if (part.isEmpty()) {
+				continue;
+			}
+			if (part.equals(MEASUREMENT)) {
+				join(measurement, name[i]);
+			} else {
+				String value = extracted.get(part);
+				extracted.put(part, value == null ? name[i] : value + '.' + name[i]);
+			}
+		}
+		tags.putAll(extracted);
+		return measurement.length() > 0 ? measurement.toString() : null;
+	}
+
+	private static void join(StringBuilder builder, String part) {
+		if (builder.length() > 0) {
+			builder.append('.');
+		}
+		builder.append(part);
+	}
+
+	static String[] split(@Nonnull final String name) {
+		List<String> parts = new ArrayList<>();
+		int start = 0;
+		int end;
+		while ((end = name.indexOf('.', start)) >= 0) {
+			parts.add(name.substring(start, end));
+			start = end + 1;
+		}
+		parts.add(name.substring(start));
+		return parts.toArray(new String[parts.size()]);
+	}
+}
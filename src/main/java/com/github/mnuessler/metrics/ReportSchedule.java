@@ -0,0 +1,72 @@
+package com.github.mnuessler.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.Nullable;
+
+/**
+ * When the reports of a reporter started with a given period run. Each report belongs to a slot, a multiple of the period after the
+ * start or, if aligned, after the epoch. The report of a slot runs after a phase offset derived from a hash of the instance key, so
+ * that instances with different keys spread their writes over the period, plus a random jitter. Slots missed because a report took
+ * longer than the period are skipped. Instances are immutable.
+ */
+final class ReportSchedule {
+
+	private final boolean aligned;
+
+	private final long phaseHash;
+
+	private final long maxJitterMillis;
+
+	/**
+	 * @param phaseKey key identifying the instance, e.g. host and application name, or {@code null} for no phase offset
+	 * @param maxJitterMillis upper bound of the random delay of each report
+	 */
+	ReportSchedule(final boolean aligned, @Nullable final String phaseKey, final long maxJitterMillis) {
+		if (maxJitterMillis < 0) {
+			throw new IllegalArgumentException("Jitter must not be negative: " + maxJitterMillis);
+		}
+		this.aligned = aligned;
+		this.phaseHash = phaseKey != null ? ChangeTracker.hash(phaseKey) : 0;
+		this.maxJitterMillis = maxJitterMillis;
+	}
+
+	/**
+	 * Returns the first slot of a reporter started at the given time.
+	 */
+	long firstSlot(long startMillis, long periodMillis) {
+		if (!aligned) {
+			return startMillis + periodMillis;
+		}
+		long slot = (startMillis - phaseOffset(periodMillis)) / periodMillis * periodMillis;
+		return slot + periodMillis;
+	}
+
+	/**
+	 * Returns the slot following the given one, or the latest slot that is already due if the following one was missed.
+	 */
+	long nextSlot(long slot, long nowMillis, long periodMillis) {
+		long next = slot + periodMillis;
+		long due = nowMillis - phaseOffset(periodMillis);
+		if (next < due) {
+			next += (due - next) / periodMillis * periodMillis;
+		}
+		return next;
+	}
+
+	/**
+	 * Returns when the report of the slot runs, with a new random jitter on every call.
+	 */
+	long runAt(long slot, long periodMillis) {
+		long jitter = maxJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(maxJitterMillis) : 0;
+		return slot + phaseOffset(periodMillis) + jitter;
+	}
+
+	/**
+	 * Stable offset of this instance within the period.
+	 */
+	long phaseOffset(long periodMillis) {
+		long offset = phaseHash % periodMillis;
+		return offset < 0 ? offset + periodMillis : offset;
+	}
+}
@@ -0,0 +1,64 @@
+package com.github.mnuessler.metrics;
+
+import javax.annotation.Nonnull;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.mnuessler.influxdb.FlushableInfluxDbClient;
+import com.github.mnuessler.influxdb.InfluxDbClient;
+
+/**
+ * Metrics describing the reporter itself, updated once per report cycle. The write metrics are {@code null} for reporters of an
+ * {@link InfluxDbReportingHub}, whose writes only collect the points in memory, the hub publishes them instead.
+ */
+final class ReporterMetrics {
+
+	final Timer collectTime;
+
+	final Timer writeTime;
+
+	final Histogram points;
+
+	final Histogram bytes;
+
+	final Counter invalidPoints;
+
+	final Counter unchangedPoints;
+
+	final Counter writeFailures;
+
+	ReporterMetrics(@Nonnull MetricRegistry registry, @Nonnull String prefix, @Nonnull InfluxDbClient client) {
+		boolean writes = !(client instanceof InfluxDbReportingHub.CollectingClient);
+		this.collectTime = registry.timer(MetricRegistry.name(prefix, "collect"));
+		this.writeTime = writes ? registry.timer(MetricRegistry.name(prefix, "write")) : null;
+		this.points = registry.histogram(MetricRegistry.name(prefix, "points"));
+		this.bytes = writes ? registry.histogram(MetricRegistry.name(prefix, "bytes")) : null;
+		this.invalidPoints = registry.counter(MetricRegistry.name(prefix, "invalid-points"));
+		this.unchangedPoints = registry.counter(MetricRegistry.name(prefix, "unchanged-points"));
+		this.writeFailures = writes ? registry.counter(MetricRegistry.name(prefix, "write-failures")) : null;
+		if (client instanceof FlushableInfluxDbClient) {
+			final FlushableInfluxDbClient asyncClient = (FlushableInfluxDbClient) client;
+			register(registry, MetricRegistry.name(prefix, "queue-size"), new Gauge<Integer>() {
+				@Override
+				public Integer getValue() {
+					return asyncClient.getQueueSize();
+				}
+			});
+			register(registry, MetricRegistry.name(prefix, "dropped-batches"), new Gauge<Long>() {
+				@Override
+				public Long getValue() {
+					return asyncClient.getDroppedBatches();
+				}
+			});
+		}
+	}
+
+	private static void register(MetricRegistry registry, String name, Gauge<?> gauge) {
+		// replaces the gauge of a previous reporter with the same prefix
+		registry.remove(name);
+		registry.register(name, gauge);
+	}
+}
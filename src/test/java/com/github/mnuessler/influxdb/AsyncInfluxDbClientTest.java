@@ -0,0 +1,139 @@
+package com.github.mnuessler.influxdb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncInfluxDbClientTest {
+
+    private final BlockingClient delegate = new BlockingClient();
+
+    private AsyncInfluxDbClient client;
+
+    @After
+    public void tearDown() {
+        delegate.release.countDown();
+        client.close();
+    }
+
+    @Test
+    public void testWriteCopiesPayloadAndFlushes() throws Exception {
+        // Given
+        client = AsyncInfluxDbClient.wrap(delegate).build();
+        delegate.release.countDown();
+        LineProtocolBuffer buffer = LineProtocolBuffer.wrap("foo value=1i 1\n".getBytes(InfluxDbClient.CHARSET));
+
+        // When
+        client.write(buffer, "db", null);
+        buffer.clear();
+        boolean flushed = client.flush(5, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(flushed).isTrue();
+        assertThat(delegate.payloads).containsExactly("foo value=1i 1\n");
+    }
+
+    @Test
+    public void testDropOldestWhenQueueIsFull() throws Exception {
+        // Given
+        client = AsyncInfluxDbClient.wrap(delegate).withQueueCapacity(1).withDropPolicy(AsyncInfluxDbClient.DropPolicy.DROP_OLDEST).build();
+        client.write("first", "db", null);
+        delegate.started.await(5, TimeUnit.SECONDS);
+
+        // When
+        client.write("second", "db", null);
+        client.write("third", "db", null);
+        assertThat(client.flush(50, TimeUnit.MILLISECONDS)).isFalse();
+        delegate.release.countDown();
+
+        // Then
+        assertThat(client.flush(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(client.getDroppedBatches()).isEqualTo(1);
+        assertThat(delegate.payloads).containsExactly("first", "third");
+    }
+
+    @Test
+    public void testDropNewestWhenQueueIsFull() throws Exception {
+        // Given
+        client = AsyncInfluxDbClient.wrap(delegate).withQueueCapacity(1).withDropPolicy(AsyncInfluxDbClient.DropPolicy.DROP_NEWEST).build();
+        client.write("first", "db", null);
+        delegate.started.await(5, TimeUnit.SECONDS);
+
+        // When
+        client.write("second", "db", null);
+        client.write("third", "db", null);
+        delegate.release.countDown();
+
+        // Then
+        assertThat(client.flush(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(client.getDroppedBatches()).isEqualTo(1);
+        assertThat(delegate.payloads).containsExactly("first", "second");
+    }
+
+    @Test
+    public void testDropWhenQueuedBytesExceedLimit() throws Exception {
+        // Given
+        client = AsyncInfluxDbClient.wrap(delegate)
+                .withMaxQueuedBytes(10)
+                .withDropPolicy(AsyncInfluxDbClient.DropPolicy.DROP_NEWEST)
+                .build();
+        client.write("first", "db", null);
+        delegate.started.await(5, TimeUnit.SECONDS);
+
+        // When
+        client.write("second", "db", null);
+        client.write("third", "db", null);
+        delegate.release.countDown();
+
+        // Then
+        assertThat(client.flush(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(client.getDroppedBatches()).isEqualTo(1);
+        assertThat(delegate.payloads).containsExactly("first", "second");
+    }
+
+    @Test
+    public void testCloseDiscardsQueuedBatches() throws Exception {
+        // Given
+        client = AsyncInfluxDbClient.wrap(delegate).build();
+        client.write("first", "db", null);
+        delegate.started.await(5, TimeUnit.SECONDS);
+        client.write("second", "db", null);
+
+        // When
+        client.close();
+
+        // Then
+        assertThat(client.getQueueSize()).isZero();
+        assertThat(client.flush(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(delegate.payloads).isEmpty();
+    }
+
+    private static class BlockingClient implements InfluxDbClient {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> payloads = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void write(CharSequence payload, String database, String retentionPolicy) throws IOException {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            payloads.add(payload.toString());
+        }
+
+        @Override
+        public void write(LineProtocolBuffer payload, String database, String retentionPolicy) throws IOException {
+            write(payload.toString(), database, retentionPolicy);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.mnuessler.influxdb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class BatchingInfluxDbClientTest {
+
+    private static final String PAYLOAD = "a value=1i 1\nb value=2i 1\nc value=3i 1\nd value=4i 1\ne value=5i 1\n";
+
+    private final RecordingClient delegate = new RecordingClient();
+
+    @Test
+    public void testSplitByPoints() throws Exception {
+        // Given
+        BatchingInfluxDbClient client = BatchingInfluxDbClient.wrap(delegate).withMaxPointsPerBatch(2).build();
+
+        // When
+        client.write(PAYLOAD, "db", null);
+
+        // Then
+        assertThat(delegate.payloads).containsExactly(
+                "a value=1i 1\nb value=2i 1\n",
+                "c value=3i 1\nd value=4i 1\n",
+                "e value=5i 1\n");
+    }
+
+    @Test
+    public void testSplitByBytes() throws Exception {
+        // Given
+        BatchingInfluxDbClient client = BatchingInfluxDbClient.wrap(delegate).withMaxBytesPerBatch(30).build();
+
+        // When
+        client.write("a value=1i 1\nb value=2i 1\nc long_value=1234567890123456789i 1\nd value=4i 1", "db", null);
+
+        // Then
+        assertThat(delegate.payloads).containsExactly(
+                "a value=1i 1\nb value=2i 1\n",
+                "c long_value=1234567890123456789i 1\n",
+                "d value=4i 1");
+    }
+
+    @Test
+    public void testSingleBatchIsPassedThrough() throws Exception {
+        // Given
+        BatchingInfluxDbClient client = BatchingInfluxDbClient.wrap(delegate).build();
+
+        // When
+        client.write(PAYLOAD, "db", null);
+
+        // Then
+        assertThat(delegate.payloads).containsExactly(PAYLOAD);
+    }
+
+    @Test
+    public void testFailedBatchDoesNotLoseOtherBatches() throws Exception {
+        // Given
+        BatchingInfluxDbClient client = BatchingInfluxDbClient.wrap(delegate).withMaxPointsPerBatch(1).withConcurrency(3).build();
+        delegate.rejected = "c value=3i 1\n";
+
+        // When
+        try {
+            client.write(PAYLOAD, "db", null);
+            fail("Expected write to fail");
+        } catch (IOException e) {
+            // Then
+            assertThat(e).hasMessage("1 of 5 batches could not be written");
+        } finally {
+            client.close();
+        }
+        assertThat(delegate.payloads).containsOnly("a value=1i 1\n", "b value=2i 1\n", "d value=4i 1\n", "e value=5i 1\n");
+    }
+
+    @Test
+    public void testInterruptedWriteWaitsForRunningBatches() throws Exception {
+        // Given
+        final BatchingInfluxDbClient client = BatchingInfluxDbClient.wrap(delegate).withMaxPointsPerBatch(1).withConcurrency(2).build();
+        delegate.started = new CountDownLatch(2);
+        delegate.release = new CountDownLatch(1);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final AtomicReference<Boolean> interrupted = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.write(PAYLOAD, "db", null);
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        writer.start();
+        assertThat(delegate.started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        writer.interrupt();
+        writer.join(200);
+
+        // Then
+        try {
+            assertThat(writer.isAlive()).isTrue();
+            delegate.release.countDown();
+            writer.join(5000);
+            assertThat(writer.isAlive()).isFalse();
+            assertThat(failure.get()).isInstanceOf(IOException.class).hasMessage("Interrupted while writing batches");
+            assertThat(interrupted.get()).isTrue();
+            assertThat(delegate.payloads).containsOnly("a value=1i 1\n", "b value=2i 1\n");
+        } finally {
+            delegate.release.countDown();
+            client.close();
+        }
+    }
+
+    private static class RecordingClient implements InfluxDbClient {
+        private final List<String> payloads = new CopyOnWriteArrayList<>();
+        private volatile String rejected;
+        private volatile CountDownLatch started;
+        private volatile CountDownLatch release;
+
+        @Override
+        public void write(CharSequence payload, String database, String retentionPolicy) throws IOException {
+            if (payload.toString().equals(rejected)) {
+                throw new IOException("rejected");
+            }
+            if (started != null) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            payloads.add(payload.toString());
+        }
+
+        @Override
+        public void write(LineProtocolBuffer payload, String database, String retentionPolicy) throws IOException {
+            write(payload.toString(), database, retentionPolicy);
+        }
+    }
+}
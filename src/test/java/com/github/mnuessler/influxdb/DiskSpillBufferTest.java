@@ -0,0 +1,86 @@
+package com.github.mnuessler.influxdb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DiskSpillBufferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot().toPath().resolve("spill");
+    }
+
+    @Test
+    public void testAppendPeekRemove() throws Exception {
+        // Given
+        DiskSpillBuffer buffer = new DiskSpillBuffer(directory, 1024, 1024 * 1024);
+
+        // When
+        buffer.append(bytes("first"), "db", "rp");
+        buffer.append(bytes("second"), "db", null);
+
+        // Then
+        DiskSpillBuffer.Record first = buffer.peek();
+        assertThat(new String(first.payload, InfluxDbClient.CHARSET)).isEqualTo("first");
+        assertThat(first.database).isEqualTo("db");
+        assertThat(first.retentionPolicy).isEqualTo("rp");
+        buffer.remove();
+        DiskSpillBuffer.Record second = buffer.peek();
+        assertThat(new String(second.payload, InfluxDbClient.CHARSET)).isEqualTo("second");
+        assertThat(second.retentionPolicy).isNull();
+        buffer.remove();
+        assertThat(buffer.isEmpty()).isTrue();
+        assertThat(buffer.peek()).isNull();
+    }
+
+    @Test
+    public void testRecoversUnreplayedRecords() throws Exception {
+        // Given
+        DiskSpillBuffer buffer = new DiskSpillBuffer(directory, 64, 1024 * 1024);
+        buffer.append(bytes("first"), "db", null);
+        buffer.append(bytes("second"), "db", null);
+        buffer.append(bytes("third"), "db", null);
+        buffer.remove();
+
+        // When
+        DiskSpillBuffer recovered = new DiskSpillBuffer(directory, 64, 1024 * 1024);
+
+        // Then
+        assertThat(new String(recovered.peek().payload, InfluxDbClient.CHARSET)).isEqualTo("second");
+        recovered.remove();
+        recovered.append(bytes("fourth"), "db", null);
+        assertThat(new String(recovered.peek().payload, InfluxDbClient.CHARSET)).isEqualTo("third");
+        recovered.remove();
+        assertThat(new String(recovered.peek().payload, InfluxDbClient.CHARSET)).isEqualTo("fourth");
+    }
+
+    @Test
+    public void testDropsOldestSegmentWhenDiskUsageIsExceeded() throws Exception {
+        // Given
+        DiskSpillBuffer buffer = new DiskSpillBuffer(directory, 32, 64);
+
+        // When
+        buffer.append(bytes("first"), "db", null);
+        buffer.append(bytes("second"), "db", null);
+        buffer.append(bytes("third"), "db", null);
+
+        // Then
+        assertThat(buffer.diskUsage()).isLessThanOrEqualTo(64);
+        assertThat(new String(buffer.peek().payload, InfluxDbClient.CHARSET)).isEqualTo("second");
+    }
+
+    private static byte[] bytes(String payload) {
+        return payload.getBytes(InfluxDbClient.CHARSET);
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.mnuessler.influxdb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DoubleFormatTest {
+
+    @Test
+    public void testFormatDouble() throws Exception {
+        assertThat(formatDouble(0.0)).isEqualTo("0");
+        assertThat(formatDouble(-0.0)).isEqualTo("0");
+        assertThat(formatDouble(1.0)).isEqualTo("1");
+        assertThat(formatDouble(-2.5)).isEqualTo("-2.5");
+        assertThat(formatDouble(0.1)).isEqualTo("0.1");
+        assertThat(formatDouble(1234.5678)).isEqualTo("1234.5678");
+        assertThat(formatDouble(1.0 / 3)).isEqualTo("0.3333333333333333");
+        assertThat(formatDouble(123456789012.0)).isEqualTo("123456789012");
+        assertThat(formatDouble(0.000001234)).isEqualTo("0.000001234");
+    }
+
+    @Test
+    public void testFormatDoubleExponential() throws Exception {
+        assertThat(formatDouble(1e21)).isEqualTo("1e+21");
+        assertThat(formatDouble(1.5e-7)).isEqualTo("1.5e-7");
+        assertThat(formatDouble(Double.MAX_VALUE)).isEqualTo("1.7976931348623157e+308");
+        assertThat(formatDouble(Double.MIN_VALUE)).isEqualTo("5e-324");
+        assertThat(formatDouble(Double.MIN_NORMAL)).isEqualTo("2.2250738585072014e-308");
+    }
+
+    @Test
+    public void testFormatDoubleRoundTrip() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+            String formatted = formatDouble(value);
+            assertThat(Double.parseDouble(formatted)).as(formatted).isEqualTo(value);
+            assertThat(significantDigits(formatted)).as(formatted).isLessThanOrEqualTo(significantDigits(Double.toString(value)));
+        }
+    }
+
+    @Test
+    public void testFormatFloat() throws Exception {
+        assertThat(formatFloat(0.1f)).isEqualTo("0.1");
+        assertThat(formatFloat(16777216f)).isEqualTo("16777216");
+        assertThat(formatFloat(Float.MAX_VALUE)).isEqualTo("3.4028235e+38");
+        assertThat(formatFloat(Float.MIN_VALUE)).isEqualTo("1e-45");
+    }
+
+    @Test
+    public void testFormatFloatRoundTrip() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            float value = Float.intBitsToFloat(random.nextInt());
+            if (Float.isNaN(value) || Float.isInfinite(value)) {
+                continue;
+            }
+            String formatted = formatFloat(value);
+            assertThat(Float.parseFloat(formatted)).as(formatted).isEqualTo(value);
+        }
+    }
+
+    @Test
+    public void testFormatBigDecimal() throws Exception {
+        assertThat(formatBigDecimal(new BigDecimal("0.000"))).isEqualTo("0");
+        assertThat(formatBigDecimal(new BigDecimal("1234.5678"))).isEqualTo("1234.5678");
+        assertThat(formatBigDecimal(new BigDecimal("-0.0015"))).isEqualTo("-0.0015");
+        assertThat(formatBigDecimal(new BigDecimal("42"))).isEqualTo("42");
+        assertThat(formatBigDecimal(new BigDecimal("1E+3"))).isEqualTo("1E+3");
+        assertThat(formatBigDecimal(new BigDecimal("12345678901234567890.5"))).isEqualTo("12345678901234567890.5");
+    }
+
+    private static String formatDouble(double value) {
+        LineProtocolBuffer buffer = new LineProtocolBuffer(32);
+        DoubleFormat.appendDouble(buffer, value);
+        return buffer.toString();
+    }
+
+    private static String formatFloat(float value) {
+        LineProtocolBuffer buffer = new LineProtocolBuffer(32);
+        DoubleFormat.appendFloat(buffer, value);
+        return buffer.toString();
+    }
+
+    private static String formatBigDecimal(BigDecimal value) {
+        LineProtocolBuffer buffer = new LineProtocolBuffer(32);
+        DoubleFormat.appendBigDecimal(buffer, value);
+        return buffer.toString();
+    }
+
+    private static int significantDigits(String formatted) {
+        String mantissa = formatted.toLowerCase().split("e")[0].replace("-", "").replace(".", "");
+        mantissa = mantissa.replaceFirst("^0+", "").replaceFirst("0+$", "");
+        return Math.max(1, mantissa.length());
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.mnuessler.influxdb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class FanOutInfluxDbClientTest {
+
+    private final RecordingClient regional = new RecordingClient();
+
+    private final RecordingClient central = new RecordingClient();
+
+    private FanOutInfluxDbClient client;
+
+    @After
+    public void tearDown() {
+        regional.release.countDown();
+        central.release.countDown();
+        client.close();
+    }
+
+    @Test
+    public void testWritesToEveryDestination() throws Exception {
+        // Given
+        regional.release.countDown();
+        central.release.countDown();
+        client = FanOutInfluxDbClient.builder()
+                .withDestination(regional)
+                .withDestination(central, "central", "weekly")
+                .build();
+        LineProtocolBuffer buffer = LineProtocolBuffer.wrap("foo value=1i 1\n".getBytes(InfluxDbClient.CHARSET));
+
+        // When
+        client.write(buffer, "db", null);
+        buffer.clear();
+
+        // Then
+        assertThat(client.flush(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(regional.writes).containsExactly("db/null: foo value=1i 1\n");
+        assertThat(central.writes).containsExactly("central/weekly: foo value=1i 1\n");
+    }
+
+    @Test
+    public void testSlowDestinationDoesNotDelayOthers() throws Exception {
+        // Given
+        central.release.countDown();
+        client = FanOutInfluxDbClient.builder()
+                .withDestination(regional)
+                .withDestination(central)
+                .withQueueCapacity(1)
+                .build();
+        client.write("first", "db", null);
+        regional.started.await(5, TimeUnit.SECONDS);
+        central.awaitWrites(1);
+
+        // When
+        client.write("second", "db", null);
+        central.awaitWrites(2);
+        client.write("third", "db", null);
+        central.awaitWrites(3);
+
+        // Then
+        assertThat(central.writes).containsExactly("db/null: first", "db/null: second", "db/null: third");
+        assertThat(regional.writes).isEmpty();
+        assertThat(client.getDroppedBatches(0)).isEqualTo(1);
+        assertThat(client.getDroppedBatches(1)).isEqualTo(0);
+        regional.release.countDown();
+        assertThat(client.flush(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(regional.writes).containsExactly("db/null: first", "db/null: third");
+    }
+
+    private static class RecordingClient implements InfluxDbClient {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> writes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void write(CharSequence payload, String database, String retentionPolicy) throws IOException {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            writes.add(database + "/" + retentionPolicy + ": " + payload);
+        }
+
+        @Override
+        public void write(LineProtocolBuffer payload, String database, String retentionPolicy) throws IOException {
+            write(payload.toString(), database, retentionPolicy);
+        }
+
+        void awaitWrites(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (writes.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.mnuessler.influxdb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+public class GzipEntityTest {
+
+    @Test
+    public void testWriteToCompressesPayload() throws Exception {
+        // Given
+        LineProtocolBuffer payload = new LineProtocolBuffer(64);
+        LineProtocolEncoder encoder = new LineProtocolEncoder();
+        for (int i = 0; i < 1000; i++) {
+            encoder.beginPoint(payload, "foo", Collections.singletonMap("host", "server01")).field("value", i).end(1484385081215L);
+        }
+        GzipEntity entity = new GzipEntity(new LineProtocolEntity(payload, ContentType.TEXT_PLAIN), Deflater.BEST_SPEED);
+
+        // When
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+
+        // Then
+        assertThat(entity.getContentEncoding().getValue()).isEqualTo("gzip");
+        assertThat(entity.getContentLength()).isEqualTo(-1);
+        assertThat(out.size()).isLessThan(payload.length() / 5);
+        assertThat(gunzip(out.toByteArray())).isEqualTo(payload.toByteArray());
+    }
+
+    @Test
+    public void testContentIsCompressed() throws Exception {
+        // Given
+        LineProtocolBuffer payload = LineProtocolBuffer.wrap("foo value=1i 1484385081215\n".getBytes(InfluxDbClient.CHARSET));
+        GzipEntity entity = new GzipEntity(new LineProtocolEntity(payload, ContentType.TEXT_PLAIN), Deflater.BEST_SPEED);
+
+        // When
+        byte[] content = EntityUtils.toByteArray(entity);
+
+        // Then
+        assertThat(gunzip(content)).isEqualTo(payload.toByteArray());
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws Exception {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        for (int count = in.read(chunk); count >= 0; count = in.read(chunk)) {
+            out.write(chunk, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,229 @@
+package com.github.mnuessler.influxdb;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.absent;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpResponseException;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class InfluxDbHcClientTest {
+
+    @Rule
+    public WireMockRule server = new WireMockRule(wireMockConfig().dynamicPort());
+
+    private InfluxDbHcClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+    }
+
+    @Test
+    public void testSendsPreemptiveAuthenticationAndTargetParameters() throws Exception {
+        // Given
+        server.stubFor(post(urlPathEqualTo("/write")).willReturn(aResponse().withStatus(204)));
+        client = newClientBuilder().withCredentials("user", "secret").build();
+
+        // When
+        client.write("foo value=1i 1\n", "db", "rp");
+        client.write("foo value=2i 2\n", "db", "default");
+
+        // Then
+        server.verify(postRequestedFor(urlPathEqualTo("/write"))
+                .withHeader("Authorization", equalTo("Basic dXNlcjpzZWNyZXQ="))
+                .withQueryParam("db", equalTo("db"))
+                .withQueryParam("rp", equalTo("rp"))
+                .withQueryParam("precision", equalTo("ms")));
+        server.verify(postRequestedFor(urlPathEqualTo("/write")).withQueryParam("rp", absent()));
+    }
+
+    @Test
+    public void testRetriesServerErrors() throws Exception {
+        // Given
+        server.stubFor(post(urlPathEqualTo("/write")).inScenario("retry").whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503)).willSetStateTo("recovered"));
+        server.stubFor(post(urlPathEqualTo("/write")).inScenario("retry").whenScenarioStateIs("recovered")
+                .willReturn(aResponse().withStatus(204)));
+        client = newClientBuilder().build();
+
+        // When
+        client.write("foo value=1i 1\n", "db", null);
+
+        // Then
+        server.verify(2, postRequestedFor(urlPathEqualTo("/write")));
+        assertThat(client.getRetryCount()).isEqualTo(1);
+        assertThat(client.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testDoesNotRetryBadRequest() throws Exception {
+        // Given
+        server.stubFor(post(urlPathEqualTo("/write")).willReturn(aResponse().withStatus(400)));
+        client = newClientBuilder().build();
+
+        // When
+        try {
+            client.write("foo value=", "db", null);
+            fail("Expected HttpResponseException");
+        } catch (HttpResponseException e) {
+            // Then
+            assertThat(e.getStatusCode()).isEqualTo(400);
+        }
+        server.verify(1, postRequestedFor(urlPathEqualTo("/write")));
+        assertThat(client.getRetryCount()).isZero();
+    }
+
+    @Test
+    public void testCircuitBreakerOpensAfterRepeatedFailures() throws Exception {
+        // Given
+        server.stubFor(post(urlPathEqualTo("/write")).willReturn(aResponse().withStatus(500)));
+        client = newClientBuilder().withMaxRetries(3).withCircuitBreaker(2, 1, TimeUnit.MINUTES).build();
+
+        // When
+        IOException failure = null;
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.write("foo value=1i 1\n", "db", null);
+                fail("Expected IOException");
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        // Then
+        server.verify(2, postRequestedFor(urlPathEqualTo("/write")));
+        assertThat(client.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(client.getFailedWriteCount()).isEqualTo(2);
+        assertThat(failure).hasMessageContaining("Circuit breaker is open").hasCauseInstanceOf(HttpResponseException.class);
+    }
+
+    @Test
+    public void testClientsOfSameBuilderHaveOwnCircuitBreakers() throws Exception {
+        // Given
+        server.stubFor(post(urlPathEqualTo("/write")).willReturn(aResponse().withStatus(500)));
+        InfluxDbHcClient.Builder builder = newClientBuilder().withMaxRetries(0).withCircuitBreaker(1, 1, TimeUnit.MINUTES);
+        client = builder.build();
+        InfluxDbHcClient other = builder.build();
+
+        // When
+        try {
+            client.write("foo value=1i 1\n", "db", null);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // Then
+        try {
+            assertThat(client.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.OPEN);
+            assertThat(other.getCircuitBreaker()).isNotSameAs(client.getCircuitBreaker());
+            assertThat(other.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testRetriesTimeoutsAndOpensCircuitBreaker() throws Exception {
+        // Given
+        server.stubFor(post(urlPathEqualTo("/write")).willReturn(aResponse().withStatus(204).withFixedDelay(1000)));
+        client = newClientBuilder().withSocketTimeout(100).withMaxRetries(2).withCircuitBreaker(3, 1, TimeUnit.MINUTES).build();
+
+        // When
+        try {
+            client.write("foo value=1i 1\n", "db", null);
+            fail("Expected SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+
+        // Then
+        // the delayed requests are only logged by the server once it responded
+        assertThat(client.getRetryCount()).isEqualTo(2);
+        assertThat(client.getFailedWriteCount()).isEqualTo(1);
+        assertThat(client.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void testRuntimeExceptionCountsAsCircuitBreakerFailure() throws Exception {
+        // Given
+        client = newClientBuilder().withCircuitBreaker(1, 0, TimeUnit.MILLISECONDS).build();
+        client.close();
+
+        // When
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.write("foo value=1i 1\n", "db", null);
+                fail("Expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                // expected, the connection pool is shut down
+            }
+        }
+
+        // Then
+        assertThat(client.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(client.getFailedWriteCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSelfMetricsCountResponsesAndRetries() throws Exception {
+        // Given
+        server.stubFor(post(urlPathEqualTo("/write")).willReturn(aResponse().withStatus(503)));
+        MetricRegistry selfMetrics = new MetricRegistry();
+        client = newClientBuilder().withMaxRetries(1).withSelfMetrics(selfMetrics).build();
+
+        // When
+        try {
+            client.write("foo value=1i 1\n", "db", null);
+            fail("Expected HttpResponseException");
+        } catch (HttpResponseException e) {
+            // expected
+        }
+
+        // Then
+        assertThat(selfMetrics.getCounters().get("influxdb.client.responses.503").getCount()).isEqualTo(2);
+        assertThat(selfMetrics.getCounters().get("influxdb.client.retries").getCount()).isEqualTo(1);
+        assertThat(selfMetrics.getCounters().get("influxdb.client.failed-writes").getCount()).isEqualTo(1);
+        assertThat(selfMetrics.getTimers().get("influxdb.client.requests").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSelfMetricsRecordSizeOfCompressedRequests() throws Exception {
+        // Given
+        server.stubFor(post(urlPathEqualTo("/write")).willReturn(aResponse().withStatus(204)));
+        MetricRegistry selfMetrics = new MetricRegistry();
+        client = newClientBuilder().withGzip().withCompressionThreshold(0).withSelfMetrics(selfMetrics).build();
+        String payload = "foo value=1i 1\n";
+
+        // When
+        client.write(payload, "db", null);
+
+        // Then
+        server.verify(postRequestedFor(urlPathEqualTo("/write")).withHeader("Content-Encoding", equalTo("gzip")));
+        assertThat(selfMetrics.getHistograms().get("influxdb.client.request-size").getSnapshot().getValues())
+                .containsExactly(payload.length());
+    }
+
+    private InfluxDbHcClient.Builder newClientBuilder() {
+        return InfluxDbHcClient.forUrl("http://localhost:" + server.port()).withBackoff(1, 10, TimeUnit.MILLISECONDS);
+    }
+}
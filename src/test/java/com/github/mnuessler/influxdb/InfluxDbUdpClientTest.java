@@ -0,0 +1,74 @@
+package com.github.mnuessler.influxdb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InfluxDbUdpClientTest {
+
+    private DatagramSocket server;
+
+    private InfluxDbUdpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(5000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testPacksWholeLinesIntoDatagrams() throws Exception {
+        // Given
+        client = InfluxDbUdpClient.forListener(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()))
+                .withMaxDatagramSize(40)
+                .build();
+        String payload = "foo value=1i 1\nbar value=2i 1\nbaz value=3i 1\nthis line is longer than forty bytes=1i 1\nqux value=4i 1\n";
+
+        // When
+        client.write(payload, "db", null);
+
+        // Then
+        assertThat(receive()).isEqualTo("foo value=1i 1\nbar value=2i 1\n");
+        assertThat(receive()).isEqualTo("baz value=3i 1\nqux value=4i 1\n");
+        assertThat(client.getSentDatagrams()).isEqualTo(2);
+        assertThat(client.getDroppedLines()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRejectsOtherDatabase() throws Exception {
+        // Given
+        client = InfluxDbUdpClient.forListener("localhost", server.getLocalPort()).withDatabase("udp", null).build();
+
+        // When
+        client.write("foo value=1i 1\n", "udp", "default");
+        try {
+            client.write("foo value=1i 1\n", "other", null);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // Then
+            assertThat(e).hasMessageContaining("'udp'");
+        }
+        assertThat(client.getSentDatagrams()).isEqualTo(1);
+    }
+
+    private String receive() throws IOException {
+        DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+        server.receive(packet);
+        return new String(packet.getData(), 0, packet.getLength(), InfluxDbClient.CHARSET);
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.mnuessler.influxdb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+public class LineProtocolBufferTest {
+
+    private static final int SEGMENT_SIZE = SegmentPool.DEFAULT_SEGMENT_SIZE;
+
+    @Test
+    public void testContentSpanningSegments() throws Exception {
+        // Given
+        SegmentPool pool = new SegmentPool(SEGMENT_SIZE, false, 10, 1);
+        LineProtocolBuffer buffer = new LineProtocolBuffer(pool);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; expected.length() < 3 * SEGMENT_SIZE; i++) {
+            String line = "foo value=" + i + "i 1484385081215\n";
+            buffer.append(line);
+            expected.append(line);
+        }
+
+        // When
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(out);
+        int lineStart = SEGMENT_SIZE - 10;
+        int lineEnd = buffer.indexOf((byte) '\n', lineStart);
+
+        // Then
+        assertThat(buffer.length()).isEqualTo(expected.length());
+        assertThat(buffer.capacity()).isEqualTo(4 * SEGMENT_SIZE);
+        assertThat(out.toString("UTF-8")).isEqualTo(expected.toString());
+        assertThat(buffer.toString()).isEqualTo(expected.toString());
+        assertThat(lineEnd).isEqualTo(expected.indexOf("\n", lineStart));
+        assertThat(buffer.slice(lineStart, lineEnd - lineStart).toString()).isEqualTo(expected.substring(lineStart, lineEnd));
+        assertThat(buffer.asReadOnlyByteBuffer().remaining()).isEqualTo(expected.length());
+    }
+
+    @Test
+    public void testSliceSpanningSegmentsSharesContent() throws Exception {
+        // Given
+        LineProtocolBuffer buffer = new LineProtocolBuffer(16);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; expected.length() < 3 * SEGMENT_SIZE; i++) {
+            String line = "foo value=" + i + "i 1484385081215\n";
+            buffer.append(line);
+            expected.append(line);
+        }
+        int offset = SEGMENT_SIZE - 10;
+        int length = SEGMENT_SIZE + 20;
+
+        // When
+        LineProtocolBuffer slice = buffer.slice(offset, length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        slice.writeTo(out);
+
+        // Then
+        String content = expected.substring(offset, offset + length);
+        assertThat(slice.length()).isEqualTo(length);
+        assertThat(slice.capacity()).isEqualTo(3 * SEGMENT_SIZE);
+        assertThat(out.toString("UTF-8")).isEqualTo(content);
+        assertThat(slice.toString()).isEqualTo(content);
+        assertThat(slice.indexOf((byte) '\n', 0)).isEqualTo(content.indexOf('\n'));
+        assertThat(new LineProtocolBuffer(16).append(slice).toString()).isEqualTo(content);
+        assertThat(buffer.slice(SEGMENT_SIZE + 5, 3).toString()).isEqualTo(expected.substring(SEGMENT_SIZE + 5, SEGMENT_SIZE + 8));
+    }
+
+    @Test
+    public void testTruncateAcrossSegments() {
+        // Given
+        LineProtocolBuffer buffer = new LineProtocolBuffer(16);
+        byte[] segment = new byte[SEGMENT_SIZE];
+        buffer.append(segment).append(segment).append("foo");
+
+        // When
+        buffer.truncate(SEGMENT_SIZE - 1);
+        buffer.append(12345L);
+
+        // Then
+        assertThat(buffer.length()).isEqualTo(SEGMENT_SIZE + 4);
+        assertThat(new String(buffer.toByteArray(SEGMENT_SIZE - 1, 5), InfluxDbClient.CHARSET)).isEqualTo("12345");
+    }
+
+    @Test
+    public void testClearReturnsSegmentsToPool() {
+        // Given
+        SegmentPool pool = new SegmentPool(SEGMENT_SIZE, false, 2, 2);
+        LineProtocolBuffer buffer = new LineProtocolBuffer(pool);
+        buffer.append(new byte[3 * SEGMENT_SIZE]);
+
+        // When
+        buffer.clear();
+
+        // Then
+        assertThat(buffer.length()).isZero();
+        assertThat(buffer.capacity()).isZero();
+        assertThat(pool.size()).isEqualTo(2);
+        pool.trim();
+        buffer.append(new byte[SEGMENT_SIZE]);
+        buffer.clear();
+        pool.trim();
+        assertThat(pool.size()).isEqualTo(2);
+        pool.trim();
+        assertThat(pool.size()).isEqualTo(1);
+        pool.trim();
+        assertThat(pool.size()).isZero();
+    }
+}
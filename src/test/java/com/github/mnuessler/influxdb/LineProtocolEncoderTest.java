@@ -6,6 +6,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -239,6 +240,174 @@ public class LineProtocolEncoderTest {
         assertThat(line).isEqualTo(expectedLine);
     }
 
+    @Test
+    public void testEncodeWithSeriesKeyCache() {
+        // Given
+        SeriesKeyCache cache = new SeriesKeyCache(10);
+        LineProtocolEncoder cachingEncoder = new LineProtocolEncoder(cache);
+        Map<String, String> tags = Collections.singletonMap("host", "server 1");
+        Map<String, ?> fields = Collections.singletonMap("value", 1);
+
+        // When
+        String first = cachingEncoder.encode("a,b", fields, tags, TIMESTAMP);
+        String second = cachingEncoder.encode("a,b", fields, tags, TIMESTAMP);
+
+        // Then
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(first).isEqualTo(encoder.encode("a,b", fields, tags, TIMESTAMP));
+        assertThat(second).isEqualTo(first);
+    }
+
+    @Test
+    public void testEncodeWithSeriesKeyCacheDifferentTags() {
+        // Given
+        LineProtocolEncoder cachingEncoder = new LineProtocolEncoder(new SeriesKeyCache(10));
+        Map<String, ?> fields = Collections.singletonMap("value", 1);
+        cachingEncoder.encode("foo", fields, Collections.singletonMap("host", "server01"), TIMESTAMP);
+
+        // When
+        String line = cachingEncoder.encode("foo", fields, Collections.singletonMap("host", "server02"), TIMESTAMP);
+
+        // Then
+        assertThat(line).isEqualTo(String.format("foo,host=server02 value=1i %s%n", TIMESTAMP));
+    }
+
+    @Test
+    public void testPointWriterWithEncodedSeriesKey() {
+        // Given
+        Map<String, String> tags = Collections.singletonMap("host", "server 1");
+        byte[] seriesKey = encoder.encodeSeriesKey("a,b", tags);
+        LineProtocolBuffer buffer = new LineProtocolBuffer(64);
+
+        // When
+        encoder.beginPoint(buffer, seriesKey, "a,b").field("value", 1L).end(TIMESTAMP);
+
+        // Then
+        assertThat(buffer.toString()).isEqualTo(encoder.encode("a,b", Collections.singletonMap("value", 1), tags, TIMESTAMP));
+    }
+
+    @Test
+    public void testSeriesKeyCacheIsBounded() {
+        // Given
+        SeriesKeyCache cache = new SeriesKeyCache(1);
+        LineProtocolEncoder cachingEncoder = new LineProtocolEncoder(cache);
+        Map<String, String> tags = Collections.emptyMap();
+        Map<String, ?> fields = Collections.singletonMap("value", 1);
+
+        // When
+        cachingEncoder.encode("foo", fields, tags, TIMESTAMP);
+        String line = cachingEncoder.encode("bar", fields, tags, TIMESTAMP);
+
+        // Then
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(line).isEqualTo(String.format("bar value=1i %s%n", TIMESTAMP));
+
+        // When
+        cache.evict("foo");
+        cachingEncoder.encode("bar", fields, tags, TIMESTAMP);
+
+        // Then
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get("bar", tags)).isEqualTo("bar".getBytes(InfluxDbClient.CHARSET));
+    }
+
+    @Test
+    public void testPointWriterTypedFields() {
+        // Given
+        LineProtocolBuffer buffer = new LineProtocolBuffer(16);
+        Map<String, String> tags = Collections.singletonMap("host", "server01");
+
+        // When
+        boolean written = encoder.beginPoint(buffer, "foo", tags)
+                .field("count", 42L)
+                .field("mean", 0.5)
+                .field("up", true)
+                .field("state", "ok")
+                .end(TIMESTAMP);
+
+        // Then
+        assertThat(written).isTrue();
+        assertThat(buffer.toString()).isEqualTo(String.format("foo,host=server01 count=42i,mean=0.5,up=true,state=\"ok\" %s%n", TIMESTAMP));
+    }
+
+    @Test
+    public void testPointWriterDiscardsPointWithInvalidValue() {
+        // Given
+        LineProtocolBuffer buffer = new LineProtocolBuffer(16);
+        encoder.beginPoint(buffer, "bar", Collections.<String, String>emptyMap()).field("value", 1L).end(1L);
+        Map<String, String> tags = Collections.singletonMap("host", "server01");
+
+        // When
+        boolean written = encoder.beginPoint(buffer, "foo", tags)
+                .field("count", 42L)
+                .field("mean", Double.NaN)
+                .field("max", 1L)
+                .end(TIMESTAMP);
+
+        // Then
+        assertThat(written).isFalse();
+        assertThat(buffer.toString()).isEqualTo("bar value=1i 1\n");
+    }
+
+    @Test
+    public void testPointWriterDiscardsPointWithoutFields() {
+        // Given
+        LineProtocolBuffer buffer = new LineProtocolBuffer(16);
+
+        // When
+        boolean written = encoder.beginPoint(buffer, "foo", Collections.<String, String>emptyMap()).end(TIMESTAMP);
+
+        // Then
+        assertThat(written).isFalse();
+        assertThat(buffer.toString()).isEmpty();
+    }
+
+    @Test
+    public void testPointWriterConvertsTimestampToPrecision() {
+        // Given
+        LineProtocolEncoder secondsEncoder = new LineProtocolEncoder(null, Precision.SECONDS);
+        LineProtocolBuffer buffer = new LineProtocolBuffer(16);
+
+        // When
+        secondsEncoder.beginPoint(buffer, "foo", Collections.<String, String>emptyMap())
+                .field("value", 1L)
+                .end(TIMESTAMP, TimeUnit.MILLISECONDS);
+
+        // Then
+        assertThat(buffer.toString()).isEqualTo("foo value=1i 1484385081\n");
+    }
+
+    @Test
+    public void testEncodeUnicode() {
+        // Given
+        String measurement = "caf\u00e9 \ud83d\ude00";
+        Map<String, String> tags = Collections.singletonMap("h\u00f6st", "\u20ac");
+        Map<String, ?> fields = Collections.singletonMap("value", "\u00fc");
+        LineProtocolBuffer buffer = new LineProtocolBuffer(4);
+
+        // When
+        encoder.encodeInto(buffer, measurement, fields, tags, TIMESTAMP);
+
+        // Then
+        String expectedLine = String.format("caf\u00e9\\ \ud83d\ude00,h\u00f6st=\u20ac value=\"\u00fc\" %s%n", TIMESTAMP);
+        assertThat(buffer.toByteArray()).isEqualTo(expectedLine.getBytes(InfluxDbClient.CHARSET));
+    }
+
+    @Test
+    public void testEncodeIntoDirectBuffer() {
+        // Given
+        LineProtocolBuffer buffer = new LineProtocolBuffer(4, true);
+        Map<String, String> tags = Collections.singletonMap("host", "server01");
+
+        // When
+        encoder.beginPoint(buffer, "foo", tags).field("min", Long.MIN_VALUE).field("max", Long.MAX_VALUE).end(TIMESTAMP);
+
+        // Then
+        assertThat(buffer.isDirect()).isTrue();
+        assertThat(buffer.toString()).isEqualTo(
+                String.format("foo,host=server01 min=%si,max=%si %s%n", Long.MIN_VALUE, Long.MAX_VALUE, TIMESTAMP));
+    }
+
     private void testEncodeInvalidDouble(Double value) {
         // Given
         long timestamp = System.currentTimeMillis();
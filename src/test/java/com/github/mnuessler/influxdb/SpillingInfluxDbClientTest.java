@@ -0,0 +1,97 @@
+package com.github.mnuessler.influxdb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpillingInfluxDbClientTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FailingClient delegate = new FailingClient();
+
+    private SpillingInfluxDbClient client;
+
+    @After
+    public void tearDown() {
+        client.close();
+    }
+
+    @Test
+    public void testSpillsOnlyFailedBatches() throws Exception {
+        // Given
+        BatchingInfluxDbClient batching = BatchingInfluxDbClient.wrap(delegate).withMaxPointsPerBatch(1).build();
+        client = SpillingInfluxDbClient.wrap(batching, folder.getRoot().toPath()).withReplayRate(100).build();
+        delegate.failures.put("b value=2i 1\n", new AtomicInteger(1));
+
+        // When
+        client.write("a value=1i 1\nb value=2i 1\nc value=3i 1\n", "db", null);
+        client.write("d value=4i 1\n", "db", null);
+
+        // Then
+        awaitPayloads(4);
+        assertThat(delegate.payloads).containsExactly("a value=1i 1\n", "c value=3i 1\n", "d value=4i 1\n", "b value=2i 1\n");
+    }
+
+    @Test
+    public void testDropsPayloadFailingRepeatedly() throws Exception {
+        // Given
+        client = SpillingInfluxDbClient.wrap(delegate, folder.getRoot().toPath()).withReplayRate(100).withMaxReplayAttempts(2).build();
+        delegate.failures.put("bad", new AtomicInteger(Integer.MAX_VALUE));
+        delegate.failures.put("later", new AtomicInteger(1));
+
+        // When
+        client.write("bad", "db", null);
+        client.write("later", "db", null);
+        client.write("good", "db", null);
+
+        // Then
+        awaitPayloads(2);
+        assertThat(delegate.payloads).containsExactly("good", "later");
+        assertThat(delegate.attempts.get("bad").get()).isEqualTo(3);
+    }
+
+    private void awaitPayloads(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && delegate.payloads.size() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static class FailingClient implements InfluxDbClient {
+        private final List<String> payloads = new CopyOnWriteArrayList<>();
+        // remaining failures per payload, a runtime exception for those failing forever
+        private final Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+        @Override
+        public void write(CharSequence payload, String database, String retentionPolicy) throws IOException {
+            String content = payload.toString();
+            attempts.putIfAbsent(content, new AtomicInteger());
+            attempts.get(content).incrementAndGet();
+            AtomicInteger remaining = failures.get(content);
+            if (remaining != null && remaining.get() == Integer.MAX_VALUE) {
+                throw new IllegalStateException("broken");
+            }
+            if (remaining != null && remaining.getAndDecrement() > 0) {
+                throw new IOException("unavailable");
+            }
+            payloads.add(content);
+        }
+
+        @Override
+        public void write(LineProtocolBuffer payload, String database, String retentionPolicy) throws IOException {
+            write(payload.toString(), database, retentionPolicy);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.mnuessler.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class AggregatorTest {
+
+    @Test
+    public void testAggregatesGaugeSamplesPerInterval() {
+        // Given
+        Aggregator aggregator = new Aggregator(3);
+
+        // When
+        assertThat(aggregator.nextTick()).isFalse();
+        aggregator.sample("foo", 2);
+        assertThat(aggregator.nextTick()).isFalse();
+        aggregator.sample("foo", 7);
+        assertThat(aggregator.nextTick()).isTrue();
+        int slot = aggregator.sample("foo", 3);
+
+        // Then
+        assertThat(aggregator.samples(slot)).isEqualTo(3);
+        assertThat(aggregator.min(slot)).isEqualTo(2);
+        assertThat(aggregator.max(slot)).isEqualTo(7);
+        assertThat(aggregator.mean(slot)).isEqualTo(4);
+        assertThat(aggregator.last(slot)).isEqualTo(3);
+        aggregator.reset(slot);
+        assertThat(aggregator.nextTick()).isFalse();
+        assertThat(aggregator.samples(aggregator.sample("foo", 5))).isEqualTo(1);
+    }
+
+    @Test
+    public void testCounterDeltas() {
+        // Given
+        Aggregator aggregator = new Aggregator(1);
+
+        // When / Then
+        aggregator.nextTick();
+        assertThat(aggregator.delta("foo", 5)).isEqualTo(5);
+        aggregator.nextTick();
+        assertThat(aggregator.delta("foo", 12)).isEqualTo(7);
+        aggregator.nextTick();
+        assertThat(aggregator.delta("foo", 12)).isEqualTo(0);
+    }
+
+    @Test
+    public void testDropsSeriesNotSeenWhenGrowing() {
+        // Given
+        Aggregator aggregator = new Aggregator(1);
+        aggregator.nextTick();
+        for (int i = 0; i < 150; i++) {
+            aggregator.delta("old." + i, i);
+        }
+        aggregator.nextTick();
+        aggregator.nextTick();
+        aggregator.nextTick();
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            aggregator.sample("new." + i, i);
+        }
+
+        // Then
+        assertThat(aggregator.size()).isEqualTo(100);
+        assertThat(aggregator.delta("old.1", 3)).isEqualTo(3);
+    }
+}
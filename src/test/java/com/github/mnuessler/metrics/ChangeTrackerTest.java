@@ -0,0 +1,72 @@
+package com.github.mnuessler.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class ChangeTrackerTest {
+
+    @Test
+    public void testReportsChangedValuesAndHeartbeats() {
+        // Given
+        ChangeTracker tracker = new ChangeTracker(3);
+
+        // When / Then
+        tracker.nextInterval();
+        assertThat(tracker.changed("foo", 1)).isTrue();
+        tracker.nextInterval();
+        assertThat(tracker.changed("foo", 1)).isFalse();
+        tracker.nextInterval();
+        assertThat(tracker.changed("foo", 2)).isTrue();
+        tracker.nextInterval();
+        assertThat(tracker.changed("foo", 2)).isFalse();
+        tracker.nextInterval();
+        assertThat(tracker.changed("foo", 2)).isFalse();
+        tracker.nextInterval();
+        assertThat(tracker.changed("foo", 2)).isTrue();
+    }
+
+    @Test
+    public void testRolledBackMetricsAreReportedAgain() {
+        // Given
+        ChangeTracker tracker = new ChangeTracker(10);
+        tracker.nextInterval();
+        tracker.changed("written", 1);
+        tracker.commit();
+        tracker.changed("lost", 1);
+
+        // When
+        tracker.rollback();
+        tracker.nextInterval();
+
+        // Then
+        assertThat(tracker.changed("written", 1)).isFalse();
+        assertThat(tracker.changed("lost", 1)).isTrue();
+        tracker.commit();
+        tracker.nextInterval();
+        assertThat(tracker.changed("lost", 1)).isFalse();
+    }
+
+    @Test
+    public void testDropsMetricsNotSeenWhenGrowing() {
+        // Given
+        ChangeTracker tracker = new ChangeTracker(10);
+        tracker.nextInterval();
+        for (int i = 0; i < 150; i++) {
+            tracker.changed("old." + i, i);
+        }
+        tracker.nextInterval();
+        tracker.nextInterval();
+
+        // When
+        for (int i = 0; i < 150; i++) {
+            assertThat(tracker.changed("new." + i, i)).isTrue();
+        }
+
+        // Then
+        assertThat(tracker.size()).isLessThan(300);
+        for (int i = 0; i < 150; i++) {
+            assertThat(tracker.changed("new." + i, i)).isFalse();
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package com.github.mnuessler.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import com.github.mnuessler.influxdb.InfluxDbClient;
+import com.github.mnuessler.influxdb.LineProtocolBuffer;
+import com.github.mnuessler.influxdb.Precision;
+
+public class InfluxDbReporterTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private final RecordingClient client = new RecordingClient();
+
+    @Test
+    public void testChangeOnlyReportingSkipsUnchangedMetrics() {
+        // Given
+        Counter idle = registry.counter("idle");
+        Counter busy = registry.counter("busy");
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withChangeOnlyReporting(3)
+                .build();
+
+        // When
+        reporter.report();
+        busy.inc();
+        reporter.report();
+        busy.inc();
+        reporter.report();
+        reporter.report();
+
+        // Then
+        assertThat(client.payloads).hasSize(4);
+        assertThat(client.payloads.get(0)).contains("idle count=0i").contains("busy count=0i");
+        assertThat(client.payloads.get(1)).doesNotContain("idle").contains("busy count=1i");
+        assertThat(client.payloads.get(2)).doesNotContain("idle").contains("busy count=2i");
+        assertThat(client.payloads.get(3)).contains("idle count=0i").doesNotContain("busy");
+    }
+
+    @Test
+    public void testChangeOnlyReportingRepeatsPointsOfFailedWrites() {
+        // Given
+        registry.counter("idle");
+        Counter busy = registry.counter("busy");
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withChangeOnlyReporting(10)
+                .build();
+        reporter.report();
+        busy.inc();
+        client.failures = 1;
+
+        // When
+        reporter.report();
+        reporter.report();
+        reporter.report();
+
+        // Then
+        assertThat(client.payloads).hasSize(2);
+        assertThat(client.payloads.get(1)).doesNotContain("idle").contains("busy count=1i");
+    }
+
+    @Test
+    public void testParallelReportingEncodesSamePoints() {
+        // Given
+        for (int i = 0; i < 100; i++) {
+            registry.histogram("histogram." + i).update(i);
+            registry.timer("timer." + i).update(i, TimeUnit.MILLISECONDS);
+        }
+        registry.meter("meter").mark();
+        InfluxDbReporter serial = InfluxDbReporter.forRegistry(registry).withInfluxDbClient(client).withDatabase("db").build();
+        InfluxDbReporter parallel = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withParallelism(4)
+                .build();
+
+        // When
+        serial.report();
+        parallel.report();
+        parallel.stop();
+
+        // Then
+        assertThat(client.payloads).hasSize(2);
+        assertThat(measurements(client.payloads.get(1))).hasSize(201)
+                .containsExactlyElementsOf(measurements(client.payloads.get(0)));
+        // timer rates change between the two reports, histogram points do not
+        assertThat(histograms(client.payloads.get(1))).hasSize(100)
+                .containsOnlyElementsOf(histograms(client.payloads.get(0)));
+    }
+
+    @Test
+    public void testParallelReportingRepeatsMetricsOfFailedWorker() {
+        // Given
+        final AtomicLong failures = new AtomicLong(1);
+        for (int i = 0; i < 100; i++) {
+            registry.histogram("histogram." + i).update(i);
+        }
+        registry.register("histogram.broken", new Histogram(new UniformReservoir()) {
+            @Override
+            public Snapshot getSnapshot() {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("broken");
+                }
+                return super.getSnapshot();
+            }
+        });
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withParallelism(4)
+                .withChangeOnlyReporting(10)
+                .build();
+
+        // When
+        reporter.report();
+        reporter.report();
+        reporter.stop();
+
+        // Then
+        // the points of the other workers are written, the metrics of the failed one are reported again although unchanged
+        assertThat(client.payloads).hasSize(2);
+        List<String> first = measurements(client.payloads.get(0));
+        List<String> second = measurements(client.payloads.get(1));
+        assertThat(first).isNotEmpty().doesNotContain("histogram.broken").doesNotContainAnyElementsOf(second);
+        assertThat(second).hasSize(101 - first.size()).contains("histogram.broken");
+    }
+
+    @Test
+    public void testStoppedParallelReporterReportsSerially() {
+        // Given
+        for (int i = 0; i < 100; i++) {
+            registry.histogram("histogram." + i).update(i);
+        }
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withParallelism(4)
+                .build();
+        reporter.stop();
+
+        // When
+        reporter.report();
+
+        // Then
+        assertThat(client.payloads).hasSize(1);
+        assertThat(measurements(client.payloads.get(0))).hasSize(100);
+    }
+
+    @Test
+    public void testFilteredHistogramsAreNotSnapshotted() {
+        // Given
+        registry.register("filtered", new Histogram(new UniformReservoir()) {
+            @Override
+            public Snapshot getSnapshot() {
+                throw new AssertionError("Snapshot of filtered histogram");
+            }
+        });
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withFilter(new MetricFilter() {
+                    @Override
+                    public boolean matches(String name, Metric metric) {
+                        return !name.equals("filtered");
+                    }
+                })
+                .build();
+
+        // When
+        reporter.report();
+
+        // Then
+        assertThat(client.payloads).isEmpty();
+    }
+
+    @Test
+    public void testSelfMetricsCountPoints() {
+        // Given
+        MetricRegistry selfMetrics = new MetricRegistry();
+        registry.counter("counter").inc();
+        registry.register("invalid", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return Double.NaN;
+            }
+        });
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withSelfMetrics(selfMetrics)
+                .build();
+
+        // When
+        reporter.report();
+
+        // Then
+        assertThat(selfMetrics.getHistograms().get("influxdb.reporter.points").getSnapshot().getMax()).isEqualTo(1);
+        assertThat(selfMetrics.getHistograms().get("influxdb.reporter.bytes").getSnapshot().getMax())
+                .isEqualTo(client.payloads.get(0).length());
+        assertThat(selfMetrics.getCounters().get("influxdb.reporter.invalid-points").getCount()).isEqualTo(1);
+        assertThat(selfMetrics.getTimers().get("influxdb.reporter.write").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAlignedTimestampsInSeconds() {
+        // Given
+        registry.counter("counter").inc();
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withPrecision(Precision.SECONDS)
+                .withAlignedTimestamps()
+                .build();
+        reporter.start(1, TimeUnit.HOURS);
+
+        // When
+        long before = System.currentTimeMillis();
+        reporter.report();
+        long after = System.currentTimeMillis();
+        reporter.stop();
+
+        // Then
+        String line = client.payloads.get(client.payloads.size() - 1);
+        long timestamp = Long.parseLong(line.substring(line.lastIndexOf(' ') + 1).trim());
+        assertThat(timestamp % 3600).isEqualTo(0);
+        assertThat(timestamp).isBetween((before - 1800000) / 1000, (after + 1800000) / 1000);
+    }
+
+    @Test
+    public void testTemplatesSplitNamesIntoMeasurementAndTags() {
+        // Given
+        registry.counter("users.GET.requests").inc();
+        registry.counter("users.POST.requests").inc(2);
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withTag("host", "web01")
+                .withTemplate("service.method.measurement*")
+                .build();
+
+        // When, the second report with cached series keys
+        reporter.report();
+        reporter.report();
+
+        // Then
+        for (String payload : client.payloads) {
+            assertThat(payload)
+                    .contains("requests,host=web01,method=GET,service=users count=1i")
+                    .contains("requests,host=web01,method=POST,service=users count=2i");
+        }
+    }
+
+    @Test
+    public void testReportsSelectedFieldsOnly() {
+        // Given
+        registry.histogram("histogram").update(3);
+        registry.timer("timer").update(2500, TimeUnit.MICROSECONDS);
+        registry.register("counted", new Timer() {
+            @Override
+            public Snapshot getSnapshot() {
+                throw new AssertionError("Snapshot not needed");
+            }
+        });
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withHistogramFields(MetricField.COUNT, MetricField.MAX)
+                .withTimerFields(MetricField.COUNT, MetricField.P99, MetricField.MAX)
+                .withFields("count.*", MetricField.COUNT)
+                .build();
+
+        // When
+        reporter.report();
+
+        // Then
+        assertThat(client.payloads.get(0))
+                .contains("histogram count=1i,max=3i ")
+                .contains("timer count=1i,max=3i,99-percentile=2.5 ")
+                .contains("counted count=0i ");
+    }
+
+    @Test
+    public void testAggregatesReports() {
+        // Given
+        final AtomicLong value = new AtomicLong();
+        registry.register("gauge", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return value.get();
+            }
+        });
+        Counter counter = registry.counter("counter");
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withAggregation(3)
+                .build();
+
+        // When
+        for (long sample : new long[] { 4, 1, 7, 2 }) {
+            value.set(sample);
+            counter.inc(sample);
+            reporter.report();
+        }
+        reporter.report();
+        reporter.report();
+
+        // Then
+        assertThat(client.payloads).hasSize(2);
+        assertThat(client.payloads.get(0))
+                .contains("gauge value=7i,min=1,max=7,mean=4,samples=3i ")
+                .contains("counter count=12i,delta=12i ");
+        assertThat(client.payloads.get(1))
+                .contains("gauge value=2i,min=2,max=2,mean=2,samples=3i ")
+                .contains("counter count=14i,delta=2i ");
+    }
+
+    @Test
+    public void testChangeOnlyReportingKeepsAggregatesOfSkippedPoints() {
+        // Given
+        final AtomicLong value = new AtomicLong();
+        registry.register("gauge", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return value.get();
+            }
+        });
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withAggregation(2)
+                .withChangeOnlyReporting(10)
+                .build();
+
+        // When
+        for (long sample : new long[] { 5, 5, 5, 5, 1, 5 }) {
+            value.set(sample);
+            reporter.report();
+        }
+
+        // Then
+        assertThat(client.payloads).hasSize(2);
+        assertThat(client.payloads.get(0)).contains("gauge value=5i,min=5,max=5,mean=5,samples=2i ");
+        assertThat(client.payloads.get(1)).contains("gauge value=5i,min=1,max=5,mean=4,samples=4i ");
+    }
+
+    @Test
+    public void testAggregationFiltersOnlyGaugesBetweenWrites() {
+        // Given
+        final List<String> filtered = new ArrayList<>();
+        registry.counter("counter");
+        registry.register("gauge", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return 1L;
+            }
+        });
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withAggregation(2)
+                .withFilter(new MetricFilter() {
+                    @Override
+                    public boolean matches(String name, Metric metric) {
+                        filtered.add(name);
+                        return true;
+                    }
+                })
+                .build();
+
+        // When
+        reporter.report();
+
+        // Then
+        assertThat(client.payloads).isEmpty();
+        assertThat(filtered).containsExactly("gauge");
+
+        // When
+        reporter.report();
+
+        // Then
+        assertThat(client.payloads).hasSize(1);
+        assertThat(filtered).containsExactly("gauge", "gauge", "counter");
+    }
+
+    @Test
+    public void testStreamingWritesBatches() {
+        // Given
+        MetricRegistry selfMetrics = new MetricRegistry();
+        for (int i = 0; i < 1000; i++) {
+            registry.counter("counter." + i).inc(i);
+        }
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withStreaming(1024)
+                .withSelfMetrics(selfMetrics)
+                .build();
+
+        // When
+        reporter.report();
+
+        // Then
+        assertThat(client.payloads.size()).isGreaterThan(10);
+        List<String> counters = new ArrayList<>();
+        long bytes = 0;
+        for (String payload : client.payloads) {
+            assertThat(payload).endsWith("\n");
+            assertThat(payload.length()).isLessThan(1024 + 100);
+            counters.addAll(measurements(payload));
+            bytes += payload.length();
+        }
+        assertThat(counters).hasSize(1000).doesNotHaveDuplicates();
+        assertThat(selfMetrics.getHistograms().get("influxdb.reporter.bytes").getSnapshot().getMax()).isEqualTo(bytes);
+        assertThat(selfMetrics.getTimers().get("influxdb.reporter.write").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testMetricIndexReportsSamePoints() {
+        // Given
+        registry.counter("app.counter").inc();
+        registry.histogram("app.histogram").update(1);
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withTemplate("type.measurement*")
+                .withMetricIndex()
+                .build();
+        reporter.report();
+        registry.remove("app.counter");
+        registry.meter("app.meter").mark();
+
+        // When
+        reporter.report();
+        reporter.report(registry.getGauges(), registry.getCounters(), registry.getHistograms(), registry.getMeters(),
+                registry.getTimers());
+        reporter.stop();
+
+        // Then
+        assertThat(client.payloads).hasSize(3);
+        assertThat(measurements(client.payloads.get(0))).containsExactly("counter,type=app", "histogram,type=app");
+        assertThat(measurements(client.payloads.get(1))).containsOnly("histogram,type=app", "meter,type=app");
+        assertThat(measurements(client.payloads.get(1))).containsOnlyElementsOf(measurements(client.payloads.get(2)));
+    }
+
+    @Test
+    public void testPhasedScheduleKeepsTimestampsAligned() throws InterruptedException {
+        // Given
+        registry.counter("counter").inc();
+        InfluxDbReporter reporter = InfluxDbReporter.forRegistry(registry)
+                .withInfluxDbClient(client)
+                .withDatabase("db")
+                .withAlignedSchedule()
+                .withPhaseOffset("web01/orders")
+                .withJitter(50, TimeUnit.MILLISECONDS)
+                .withAlignedTimestamps()
+                .build();
+
+        // When
+        reporter.start(200, TimeUnit.MILLISECONDS);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.payloads.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        reporter.stop();
+
+        // Then
+        assertThat(client.payloads.size()).isGreaterThanOrEqualTo(2);
+        long first = timestamp(client.payloads.get(0));
+        long second = timestamp(client.payloads.get(1));
+        assertThat(first % 200).isZero();
+        assertThat(second % 200).isZero();
+        assertThat(second).isGreaterThan(first);
+    }
+
+    private static long timestamp(String payload) {
+        return Long.parseLong(payload.substring(payload.lastIndexOf(' ') + 1).trim());
+    }
+
+    private static List<String> measurements(String payload) {
+        List<String> measurements = new ArrayList<>();
+        for (String line : payload.split("\n")) {
+            measurements.add(line.substring(0, line.indexOf(' ')));
+        }
+        return measurements;
+    }
+
+    private static List<String> histograms(String payload) {
+        List<String> histograms = new ArrayList<>();
+        for (String line : payload.split("\n")) {
+            if (line.startsWith("histogram.")) {
+                histograms.add(line.substring(0, line.lastIndexOf(' ')));
+            }
+        }
+        return histograms;
+    }
+
+    private static class RecordingClient implements InfluxDbClient {
+        private final List<String> payloads = new CopyOnWriteArrayList<>();
+        private volatile int failures;
+
+        @Override
+        public void write(CharSequence payload, String database, String retentionPolicy) throws IOException {
+            if (failures > 0) {
+                failures--;
+                throw new IOException("unavailable");
+            }
+            payloads.add(payload.toString());
+        }
+
+        @Override
+        public void write(LineProtocolBuffer payload, String database, String retentionPolicy) throws IOException {
+            write(payload.toString(), database, retentionPolicy);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.mnuessler.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.mnuessler.influxdb.InfluxDbClient;
+import com.github.mnuessler.influxdb.LineProtocolBuffer;
+import com.github.mnuessler.influxdb.Precision;
+
+public class InfluxDbReportingHubTest {
+
+    private final RecordingClient client = new RecordingClient();
+
+    private final InfluxDbReportingHub hub = InfluxDbReportingHub.forClient(client).build();
+
+    @After
+    public void tearDown() {
+        hub.stop();
+    }
+
+    @Test
+    public void testCoalescesWritesPerDatabase() {
+        // Given
+        MetricRegistry tenantA = new MetricRegistry();
+        MetricRegistry tenantB = new MetricRegistry();
+        MetricRegistry system = new MetricRegistry();
+        tenantA.counter("requests").inc(1);
+        tenantB.counter("requests").inc(2);
+        system.counter("threads").inc(3);
+        hub.register(InfluxDbReporter.forRegistry(tenantA).withDatabase("tenants").withTag("tenant", "a"));
+        hub.register(InfluxDbReporter.forRegistry(tenantB).withDatabase("tenants").withTag("tenant", "b"));
+        hub.register(InfluxDbReporter.forRegistry(system).withDatabase("system"));
+
+        // When
+        hub.report();
+
+        // Then
+        assertThat(client.databases).containsExactly("tenants", "system");
+        assertThat(client.payloads.get(0))
+                .startsWith("requests,tenant=a count=1i ")
+                .contains("\nrequests,tenant=b count=2i ");
+        assertThat(client.payloads.get(1)).startsWith("threads count=3i ");
+    }
+
+    @Test
+    public void testUnregisteredReportersAreNotReported() {
+        // Given
+        MetricRegistry tenantA = new MetricRegistry();
+        MetricRegistry tenantB = new MetricRegistry();
+        tenantA.counter("requests").inc(1);
+        tenantB.counter("requests").inc(2);
+        hub.register(InfluxDbReporter.forRegistry(tenantA).withDatabase("tenants").withTag("tenant", "a"));
+        InfluxDbReporter reporterB = hub.register(InfluxDbReporter.forRegistry(tenantB)
+                .withDatabase("tenants")
+                .withTag("tenant", "b"));
+
+        // When
+        hub.unregister(reporterB);
+        hub.report();
+
+        // Then
+        assertThat(hub.size()).isEqualTo(1);
+        assertThat(client.payloads).hasSize(1);
+        assertThat(client.payloads.get(0)).contains("tenant=a").doesNotContain("tenant=b");
+    }
+
+    @Test
+    public void testWritesFullBatchesWhileReporting() {
+        // Given
+        InfluxDbReportingHub batchingHub = InfluxDbReportingHub.forClient(client).withBatchSize(60).build();
+        for (String tenant : new String[] { "a", "b", "c" }) {
+            MetricRegistry registry = new MetricRegistry();
+            registry.counter("requests").inc();
+            batchingHub.register(InfluxDbReporter.forRegistry(registry).withDatabase("tenants").withTag("tenant", tenant));
+        }
+
+        // When
+        batchingHub.report();
+
+        // Then
+        assertThat(client.payloads).hasSize(2);
+        assertThat(client.payloads.get(0)).startsWith("requests,tenant=a ").contains("\nrequests,tenant=b ");
+        assertThat(client.payloads.get(1)).startsWith("requests,tenant=c ");
+        batchingHub.stop();
+    }
+
+    @Test
+    public void testCoalescesWritesToDefaultRetentionPolicy() {
+        // Given
+        InfluxDbReportingHub defaultPolicyHub = InfluxDbReportingHub.forClient(client).withDefaultRetentionPolicy("autogen").build();
+        String[] retentionPolicies = { "", "autogen", "weekly" };
+        for (int i = 0; i < retentionPolicies.length; i++) {
+            MetricRegistry registry = new MetricRegistry();
+            registry.counter("requests").inc(i);
+            defaultPolicyHub.register(InfluxDbReporter.forRegistry(registry)
+                    .withDatabase("tenants")
+                    .withRetentionPolicy(retentionPolicies[i]));
+        }
+
+        // When
+        defaultPolicyHub.report();
+
+        // Then
+        assertThat(client.payloads).hasSize(2);
+        assertThat(client.retentionPolicies).containsExactly("autogen", "weekly");
+        assertThat(client.payloads.get(0)).startsWith("requests count=0i ").contains("\nrequests count=1i ");
+        assertThat(client.payloads.get(1)).startsWith("requests count=2i ");
+        defaultPolicyHub.stop();
+    }
+
+    @Test
+    public void testPublishesWriteMetricsOfHubOnly() {
+        // Given
+        MetricRegistry selfMetrics = new MetricRegistry();
+        InfluxDbReportingHub meteredHub = InfluxDbReportingHub.forClient(client).withSelfMetrics(selfMetrics).build();
+        MetricRegistry registry = new MetricRegistry();
+        registry.counter("requests").inc();
+        meteredHub.register(InfluxDbReporter.forRegistry(registry).withDatabase("tenants").withSelfMetrics(selfMetrics));
+
+        // When
+        meteredHub.report();
+
+        // Then
+        assertThat(selfMetrics.getTimers().keySet()).containsOnly("influxdb.hub.write", "influxdb.reporter.collect");
+        assertThat(selfMetrics.timer("influxdb.hub.write").getCount()).isEqualTo(1);
+        assertThat(selfMetrics.histogram("influxdb.hub.bytes").getSnapshot().getMax())
+                .isEqualTo(client.payloads.get(0).length());
+        assertThat(selfMetrics.getHistograms()).doesNotContainKey("influxdb.reporter.bytes");
+        assertThat(selfMetrics.getCounters()).doesNotContainKey("influxdb.reporter.write-failures");
+        meteredHub.stop();
+    }
+
+    @Test
+    public void testRejectsReporterWithOtherPrecision() {
+        // Given
+        InfluxDbReporter.Builder builder = InfluxDbReporter.forRegistry(new MetricRegistry()).withPrecision(Precision.SECONDS);
+
+        // When
+        try {
+            hub.register(builder);
+            fail("Expected registration to fail");
+        } catch (IllegalArgumentException e) {
+            // Then
+            assertThat(e).hasMessageContaining("Precision SECONDS");
+        }
+        assertThat(hub.size()).isZero();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCannotBeStartedTwice() {
+        // Given
+        hub.start(1, TimeUnit.MINUTES);
+
+        // When
+        hub.start(1, TimeUnit.MINUTES);
+    }
+
+    private static class RecordingClient implements InfluxDbClient {
+        private final List<String> payloads = new CopyOnWriteArrayList<>();
+        private final List<String> databases = new CopyOnWriteArrayList<>();
+        private final List<String> retentionPolicies = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void write(CharSequence payload, String database, String retentionPolicy) throws IOException {
+            payloads.add(payload.toString());
+            databases.add(database);
+            retentionPolicies.add(retentionPolicy);
+        }
+
+        @Override
+        public void write(LineProtocolBuffer payload, String database, String retentionPolicy) throws IOException {
+            write(payload.toString(), database, retentionPolicy);
+        }
+    }
+}
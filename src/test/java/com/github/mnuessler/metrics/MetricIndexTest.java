@@ -0,0 +1,100 @@
+package com.github.mnuessler.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.mnuessler.influxdb.InfluxDbClient;
+
+public class MetricIndexTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private final SortedMap<String, String> tags = new TreeMap<>(Collections.singletonMap("host", "web01"));
+
+    @Test
+    public void testIndexesFilteredMetrics() {
+        // Given
+        registry.counter("existing");
+        registry.counter("ignored.counter");
+        MetricIndex index = new MetricIndex(new MetricFilter() {
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return !name.startsWith("ignored.");
+            }
+        }, null, tags);
+        registry.addListener(index);
+
+        // When
+        Counter added = registry.counter("added");
+        registry.meter("meter");
+        MetricIndex.View view = new MetricIndex.View();
+        index.update(view);
+
+        // Then
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(view.counters.size()).isEqualTo(2);
+        assertThat(view.counters.name(0)).isEqualTo("existing");
+        assertThat(view.counters.name(1)).isEqualTo("added");
+        assertThat(view.counters.metric(1)).isSameAs(added);
+        assertThat(view.counters.seriesKey(1)).isEqualTo("added,host=web01".getBytes(InfluxDbClient.CHARSET));
+        assertThat(view.meters.size()).isEqualTo(1);
+        assertThat(view.gauges.size()).isZero();
+    }
+
+    @Test
+    public void testRemovedMetricIsReplacedByLast() {
+        // Given
+        MetricIndex index = new MetricIndex(MetricFilter.ALL, null, tags);
+        registry.addListener(index);
+        registry.counter("a");
+        registry.counter("b");
+        registry.counter("c");
+        MetricIndex.View view = new MetricIndex.View();
+        index.update(view);
+
+        // When
+        registry.remove("a");
+        index.update(view);
+
+        // Then
+        assertThat(view.counters.size()).isEqualTo(2);
+        assertThat(view.counters.name(0)).isEqualTo("c");
+        assertThat(view.counters.name(1)).isEqualTo("b");
+
+        // When
+        registry.remove("c");
+        registry.counter("d");
+        index.update(view);
+
+        // Then
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(view.counters.name(0)).isEqualTo("b");
+        assertThat(view.counters.name(1)).isEqualTo("d");
+    }
+
+    @Test
+    public void testSeriesKeysUseTemplates() {
+        // Given
+        MetricNameParser parser = new MetricNameParser(Arrays.asList(MetricNameTemplate.parse("service.measurement*")), tags);
+        MetricIndex index = new MetricIndex(MetricFilter.ALL, parser, tags);
+        registry.addListener(index);
+
+        // When
+        registry.counter("users.requests");
+        MetricIndex.View view = new MetricIndex.View();
+        index.update(view);
+
+        // Then
+        assertThat(view.counters.seriesKey(0)).isEqualTo("requests,host=web01,service=users".getBytes(InfluxDbClient.CHARSET));
+    }
+}
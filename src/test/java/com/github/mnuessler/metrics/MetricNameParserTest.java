@@ -0,0 +1,73 @@
+package com.github.mnuessler.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class MetricNameParserTest {
+
+    private final SortedMap<String, String> tags = new TreeMap<>(Collections.singletonMap("host", "web01"));
+
+    @Test
+    public void testExtractsMeasurementAndTags() {
+        // Given
+        MetricNameParser parser = new MetricNameParser(Arrays.asList(MetricNameTemplate.parse("service.endpoint.method.measurement*")),
+                tags);
+
+        // When
+        MetricNameParser.ParsedName name = parser.parse("users.list.GET.latency.p99");
+
+        // Then
+        assertThat(name.measurement).isEqualTo("latency.p99");
+        assertThat(name.tags).containsExactly(entry("endpoint", "list"), entry("host", "web01"), entry("method", "GET"),
+                entry("service", "users"));
+    }
+
+    @Test
+    public void testFilteredTemplatesTakePrecedence() {
+        // Given
+        MetricNameParser parser = new MetricNameParser(Arrays.asList(
+                MetricNameTemplate.parse("..measurement host=db01"),
+                MetricNameTemplate.parse("db.* .table.measurement* source=db")), tags);
+
+        // When
+        MetricNameParser.ParsedName db = parser.parse("db.users.reads");
+        MetricNameParser.ParsedName other = parser.parse("jvm.memory.heap.used");
+
+        // Then
+        assertThat(db.measurement).isEqualTo("reads");
+        assertThat(db.tags).containsExactly(entry("host", "web01"), entry("source", "db"), entry("table", "users"));
+        assertThat(other.measurement).isEqualTo("heap");
+        assertThat(other.tags).containsExactly(entry("host", "db01"));
+    }
+
+    @Test
+    public void testCachesParsedNames() {
+        // Given
+        MetricNameParser parser = new MetricNameParser(Arrays.asList(MetricNameTemplate.parse("db.* .table.measurement")), tags);
+
+        // When
+        MetricNameParser.ParsedName first = parser.parse("db.users.reads");
+        MetricNameParser.ParsedName second = parser.parse("db.users.reads");
+        MetricNameParser.ParsedName unmatched = parser.parse("requests");
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(unmatched.measurement).isEqualTo("requests");
+        assertThat(unmatched.tags).isSameAs(tags);
+        assertThat(parser.size()).isEqualTo(2);
+        parser.evict("db.users.reads");
+        assertThat(parser.size()).isEqualTo(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsWildcardBeforeLastPart() {
+        MetricNameTemplate.parse("measurement*.service");
+    }
+}
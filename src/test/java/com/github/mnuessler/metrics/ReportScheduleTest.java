@@ -0,0 +1,79 @@
+package com.github.mnuessler.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class ReportScheduleTest {
+
+    private static final long PERIOD = 10000;
+
+    @Test
+    public void testAlignedSlotsStartAtMultiplesOfPeriod() {
+        // Given
+        ReportSchedule schedule = new ReportSchedule(true, null, 0);
+
+        // When
+        long slot = schedule.firstSlot(1234567, PERIOD);
+
+        // Then
+        assertThat(slot).isEqualTo(1240000);
+        assertThat(schedule.runAt(slot, PERIOD)).isEqualTo(1240000);
+        assertThat(schedule.nextSlot(slot, 1240100, PERIOD)).isEqualTo(1250000);
+    }
+
+    @Test
+    public void testUnalignedSlotsStartOnePeriodAfterStart() {
+        // Given
+        ReportSchedule schedule = new ReportSchedule(false, null, 0);
+
+        // When
+        long slot = schedule.firstSlot(1234567, PERIOD);
+
+        // Then
+        assertThat(slot).isEqualTo(1244567);
+        assertThat(schedule.nextSlot(slot, 1244600, PERIOD)).isEqualTo(1254567);
+    }
+
+    @Test
+    public void testPhaseOffsetIsStablePerKey() {
+        // Given
+        ReportSchedule web01 = new ReportSchedule(true, "web01/orders", 0);
+        ReportSchedule web02 = new ReportSchedule(true, "web02/orders", 0);
+
+        // When
+        long offset = web01.phaseOffset(PERIOD);
+
+        // Then
+        assertThat(offset).isBetween(0L, PERIOD - 1);
+        assertThat(new ReportSchedule(true, "web01/orders", 0).phaseOffset(PERIOD)).isEqualTo(offset);
+        assertThat(web02.phaseOffset(PERIOD)).isNotEqualTo(offset);
+        // started after its phase in the current period, the first report runs in the next period
+        long slot = web01.firstSlot(1240000 + offset + 1, PERIOD);
+        assertThat(slot).isEqualTo(1250000);
+        assertThat(web01.runAt(slot, PERIOD)).isEqualTo(1250000 + offset);
+    }
+
+    @Test
+    public void testMissedSlotsAreSkipped() {
+        // Given
+        ReportSchedule schedule = new ReportSchedule(true, null, 0);
+
+        // When
+        long next = schedule.nextSlot(1240000, 1275000, PERIOD);
+
+        // Then
+        assertThat(next).isEqualTo(1270000);
+    }
+
+    @Test
+    public void testJitterIsBounded() {
+        // Given
+        ReportSchedule schedule = new ReportSchedule(true, null, 500);
+
+        // When / Then
+        for (int i = 0; i < 100; i++) {
+            assertThat(schedule.runAt(1240000, PERIOD)).isBetween(1240000L, 1240499L);
+        }
+    }
+}